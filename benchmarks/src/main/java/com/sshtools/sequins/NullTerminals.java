@@ -0,0 +1,41 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+import org.jline.terminal.Size;
+import org.jline.terminal.Terminal;
+import org.jline.terminal.TerminalBuilder;
+
+public final class NullTerminals {
+
+	private NullTerminals() {
+	}
+
+	public static Terminal create(String type) {
+		try {
+			return TerminalBuilder.builder().type(type).system(false)
+					.streams(InputStream.nullInputStream(), OutputStream.nullOutputStream()).size(new Size(120, 40))
+					.build();
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a single progress update through each of the decorators
+ * {@link ProgressBuilder} may apply, with a sink at the end of the chain.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgressBenchmark {
+
+	@Param({ "sink", "rateLimited", "timed", "interruptable", "observable", "all" })
+	public String chain;
+
+	private Progress progress;
+	private long done;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		var sink = Progress.sink();
+		switch (chain) {
+		case "rateLimited":
+			progress = new RateLimitedProgress(sink, 500);
+			break;
+		case "timed":
+			progress = new TimedProgress(sink);
+			break;
+		case "interruptable":
+			progress = new InterruptableProgress(sink);
+			break;
+		case "observable":
+			progress = ObservableProgress.of(sink);
+			break;
+		case "all":
+			progress = new InterruptableProgress(new TimedProgress(ObservableProgress.of(new RateLimitedProgress(sink, 500))));
+			break;
+		default:
+			progress = sink;
+			break;
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		progress.close();
+	}
+
+	@Benchmark
+	public void progressedPercent() {
+		progress.progressed((int) (++done % 101));
+	}
+
+	@Benchmark
+	public void progressedBytes() {
+		progress.progressed(++done, Long.MAX_VALUE);
+	}
+
+	@Benchmark
+	public void progressedMessage() {
+		progress.progressed((int) (++done % 101), "Copying {0}", "file.txt");
+	}
+}
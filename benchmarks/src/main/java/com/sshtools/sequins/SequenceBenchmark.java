@@ -0,0 +1,105 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.terminal.Terminal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sshtools.sequins.Sequence.Color;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequenceBenchmark {
+
+	@Param({ "xterm-256color", "dumb" })
+	public String type;
+
+	private Terminal terminal;
+	private Sequins sequins;
+	private Sequence built;
+	private WritableByteChannel channel;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		terminal = NullTerminals.create(type);
+		sequins = Sequins.create(terminal);
+		built = build();
+		channel = Channels.newChannel(OutputStream.nullOutputStream());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		sequins.close();
+	}
+
+	@Benchmark
+	public Sequence build() {
+		return sequins.createSequence().str("Copying ").boldOn().str("file.txt").boldOff().str(" to ")
+				.fg(Color.BRIGHT_BLUE).str("/tmp/file.txt").defaultFg().ch(' ').size(123456789l);
+	}
+
+	@Benchmark
+	public Sequence fill() {
+		return sequins.createSequence().ch(120, ' ').cp(20, 0x1F550).str(10, "=-");
+	}
+
+	@Benchmark
+	public String buildToString() {
+		return build().toString();
+	}
+
+	@Benchmark
+	public String toAnsi() {
+		return built.toAttributedString().toAnsi(terminal);
+	}
+
+	@Benchmark
+	public void writeTo() throws IOException {
+		built.writeTo(channel);
+	}
+
+	@Benchmark
+	public Sequence msg() {
+		return sequins.createSequence().msg("Copying {0} of {1} files to {2}", 12, 300, "/tmp");
+	}
+
+	@Benchmark
+	public Sequence fmt() {
+		return sequins.createSequence().fmt("Copying %d of %d files to %s", 12, 300, "/tmp");
+	}
+}
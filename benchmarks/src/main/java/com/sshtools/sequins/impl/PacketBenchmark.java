@@ -0,0 +1,84 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sshtools.sequins.NullTerminals;
+import com.sshtools.sequins.Sequence;
+import com.sshtools.sequins.Sequins;
+
+/**
+ * Encoding of image data as Kitty graphics protocol packets.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketBenchmark {
+
+	@Param({ "1024", "4096", "65536" })
+	public int size;
+
+	private Sequins sequins;
+	private byte[] data;
+	private Map<String, Object> parms;
+	private JLineBitmapBuilder.KittyEncoder encoder;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		sequins = Sequins.create(NullTerminals.create("xterm-kitty"));
+		data = new byte[64 * 1024];
+		new Random(1).nextBytes(data);
+		parms = new LinkedHashMap<>();
+		parms.put("a", "T");
+		parms.put("f", 100);
+		encoder = new JLineBitmapBuilder.KittyEncoder();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		sequins.close();
+	}
+
+	@Benchmark
+	public Sequence transmit() throws IOException {
+		var seq = sequins.createSequence();
+		encoder.transmit(seq, parms, new ByteArrayInputStream(data, 0, size), null);
+		return seq;
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins.impl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sshtools.sequins.NullTerminals;
+import com.sshtools.sequins.Progress;
+import com.sshtools.sequins.Sequins;
+
+/**
+ * Renders a single progress line, as the frame scheduler does for each
+ * update, to a terminal that discards its output.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrintJobBenchmark {
+
+	@Param({ "xterm-256color", "dumb" })
+	public String type;
+
+	private Sequins sequins;
+	private DumbConsoleProgress progress;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		sequins = Sequins.create(NullTerminals.create(type));
+		progress = new JLineProgress(sequins, ((AbstractTerminal) sequins).frameScheduler(), false, false, Duration.ofSeconds(1), true, false, "Copying {0}", "file.txt");
+		progress.message = progress.new Formattable(Optional.of(Progress.Level.NORMAL), "Copying {0} to {1}", "file.txt", "/tmp");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		progress.close();
+		sequins.close();
+	}
+
+	@Benchmark
+	public void printJob() {
+		progress.printJob();
+	}
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins;
+
+import java.io.IOException;
+
+/**
+ * A bitmap over pixels that the caller keeps changing, such as a live graph.
+ * After it has been drawn once, changed areas are marked with
+ * {@link #changed(int, int, int, int)} and sent with {@link #update()}, which
+ * sends no more of the image than it must and paces itself to the rate the
+ * terminal has been measured to accept output at.
+ */
+public interface AnimatedBitmap extends Bitmap {
+
+	/**
+	 * Mark an area of the image as changed.
+	 *
+	 * @param x      left in pixels
+	 * @param y      top in pixels
+	 * @param width  width in pixels
+	 * @param height height in pixels
+	 */
+	void changed(int x, int y, int width, int height);
+
+	/**
+	 * Mark the whole image as changed.
+	 */
+	void changed();
+
+	/**
+	 * Send the areas changed since the last update, drawing the whole image if
+	 * it has not been drawn yet. If called sooner than the terminal can keep up
+	 * with, nothing is sent and the changes are kept for the next update.
+	 *
+	 * @return whether anything was sent
+	 * @throws IOException on error
+	 */
+	boolean update() throws IOException;
+}
@@ -0,0 +1,337 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.jline.terminal.Terminal;
+import org.jline.utils.AttributedCharSequence;
+import org.jline.utils.ColorPalette;
+import org.jline.utils.Curses;
+import org.jline.utils.InfoCmp.Capability;
+
+/**
+ * Encodes attributed text as SGR sequences and UTF-8 directly into a reused
+ * {@link ByteBuffer}, without first building an ANSI {@link String} as
+ * {@link AttributedCharSequence#toAnsi(Terminal)} does. The output is the same,
+ * byte for byte, as the UTF-8 encoding of what that method returns, so this
+ * follows it closely, down to the order attributes are written in.
+ */
+final class AnsiEncoder {
+
+	/* Mirrors the layout of AttributedStyle's style code */
+	private final static long F_BOLD = 0x00000001;
+	private final static long F_FAINT = 0x00000002;
+	private final static long F_ITALIC = 0x00000004;
+	private final static long F_UNDERLINE = 0x00000008;
+	private final static long F_BLINK = 0x00000010;
+	private final static long F_INVERSE = 0x00000020;
+	private final static long F_CONCEAL = 0x00000040;
+	private final static long F_CROSSED_OUT = 0x00000080;
+	private final static long F_FOREGROUND_IND = 0x00000100;
+	private final static long F_FOREGROUND_RGB = 0x00000200;
+	private final static long F_FOREGROUND = F_FOREGROUND_IND | F_FOREGROUND_RGB;
+	private final static long F_BACKGROUND_IND = 0x00000400;
+	private final static long F_BACKGROUND_RGB = 0x00000800;
+	private final static long F_BACKGROUND = F_BACKGROUND_IND | F_BACKGROUND_RGB;
+	private final static long F_HIDDEN = 0x00001000;
+	private final static long MASK = 0x00001FFF;
+	private final static int FG_COLOR_EXP = 15;
+	private final static int BG_COLOR_EXP = 39;
+	private final static long FG_COLOR = 0xFFFFFFL << FG_COLOR_EXP;
+	private final static long BG_COLOR = 0xFFFFFFL << BG_COLOR_EXP;
+	private final static int HIGH_COLORS = 0x7FFF;
+
+	private final static boolean DISABLE_ALTERNATE_CHARSET = Boolean
+			.getBoolean("org.jline.utils.disableAlternateCharset");
+
+	private ByteBuffer bytes = ByteBuffer.allocate(256);
+	private boolean first;
+
+	/* What is taken from the terminal, kept until the terminal changes */
+	private boolean configured;
+	private Terminal terminal;
+	private boolean plain;
+	private int colors;
+	private boolean force256;
+	private ColorPalette palette;
+	private byte[] altIn;
+	private byte[] altOut;
+
+	/**
+	 * Encode the text. The returned buffer is ready for reading, and is only
+	 * valid until the next call.
+	 *
+	 * @param text     text to encode
+	 * @param terminal terminal the text will be written to, or {@code null}
+	 * @return encoded bytes
+	 */
+	ByteBuffer encode(AttributedCharSequence text, Terminal terminal) {
+		configure(terminal);
+		bytes.clear();
+		var length = text.length();
+		var style = 0l;
+		var foreground = 0l;
+		var background = 0l;
+		var alt = false;
+		for (var i = 0; i < length; i++) {
+			var c = text.charAt(i);
+			if (plain) {
+				i = character(text, c, i, length);
+				continue;
+			}
+			if (altIn != null && altOut != null) {
+				var pc = c;
+				c = alternate(c);
+				var oldAlt = alt;
+				alt = c != pc;
+				if (oldAlt ^ alt)
+					raw(alt ? altIn : altOut);
+			}
+			var s = text.styleAt(i).getStyle() & ~F_HIDDEN;
+			if (style != s) {
+				var d = (style ^ s) & MASK;
+				var fg = (s & F_FOREGROUND) != 0 ? s & (FG_COLOR | F_FOREGROUND) : 0;
+				var bg = (s & F_BACKGROUND) != 0 ? s & (BG_COLOR | F_BACKGROUND) : 0;
+				/* ESC [ + up to 12 attributes and two 38;2;r;g;b colours */
+				ensure(96);
+				bytes.put((byte) 0x1b);
+				bytes.put((byte) '[');
+				if (s == 0) {
+					bytes.put((byte) '0');
+					foreground = background = 0;
+				} else {
+					first = true;
+					flag(d, s, F_ITALIC, 3);
+					flag(d, s, F_UNDERLINE, 4);
+					flag(d, s, F_BLINK, 5);
+					flag(d, s, F_INVERSE, 7);
+					flag(d, s, F_CONCEAL, 8);
+					flag(d, s, F_CROSSED_OUT, 9);
+					if (foreground != fg) {
+						if (fg > 0) {
+							var rounded = color(fg, F_FOREGROUND_RGB, F_FOREGROUND_IND, FG_COLOR_EXP, 38);
+							if (rounded >= 0 && (force256 || rounded >= 16)) {
+								attr(38);
+								attr(5);
+								attr(rounded);
+							} else if (rounded >= 8) {
+								attr(90 + rounded - 8);
+								/* As JLine does, bold is set again after a foreground colour change */
+								d |= s & F_BOLD;
+							} else if (rounded >= 0) {
+								attr(30 + rounded);
+								d |= s & F_BOLD;
+							}
+						} else {
+							attr(39);
+						}
+						foreground = fg;
+					}
+					if (background != bg) {
+						if (bg > 0) {
+							var rounded = color(bg, F_BACKGROUND_RGB, F_BACKGROUND_IND, BG_COLOR_EXP, 48);
+							if (rounded >= 0 && (force256 || rounded >= 16)) {
+								attr(48);
+								attr(5);
+								attr(rounded);
+							} else if (rounded >= 8) {
+								attr(100 + rounded - 8);
+							} else if (rounded >= 0) {
+								attr(40 + rounded);
+							}
+						} else {
+							attr(49);
+						}
+						background = bg;
+					}
+					if ((d & (F_BOLD | F_FAINT)) != 0) {
+						if (((d & F_BOLD) != 0 && (s & F_BOLD) == 0) || ((d & F_FAINT) != 0 && (s & F_FAINT) == 0))
+							attr(22);
+						if ((d & F_BOLD) != 0 && (s & F_BOLD) != 0)
+							attr(1);
+						if ((d & F_FAINT) != 0 && (s & F_FAINT) != 0)
+							attr(2);
+					}
+				}
+				bytes.put((byte) 'm');
+				style = s;
+			}
+			i = character(text, c, i, length);
+		}
+		if (alt)
+			raw(altOut);
+		if (style != 0) {
+			ensure(4);
+			bytes.put((byte) 0x1b);
+			bytes.put((byte) '[');
+			bytes.put((byte) '0');
+			bytes.put((byte) 'm');
+		}
+		return bytes.flip();
+	}
+
+	private void configure(Terminal terminal) {
+		if (configured && terminal == this.terminal)
+			return;
+		this.terminal = terminal;
+		configured = true;
+		plain = terminal != null && "dumb".equals(terminal.getType());
+		colors = 256;
+		force256 = false;
+		palette = ColorPalette.DEFAULT;
+		altIn = altOut = null;
+		if (terminal != null && !plain) {
+			var max = terminal.getNumericCapability(Capability.max_colors);
+			if (max != null)
+				colors = max;
+			force256 = "windows-256color".equals(terminal.getType()) || "windows-conemu".equals(terminal.getType());
+			palette = terminal.getPalette();
+			if (!DISABLE_ALTERNATE_CHARSET) {
+				altIn = bytes(Curses.tputs(terminal.getStringCapability(Capability.enter_alt_charset_mode)));
+				altOut = bytes(Curses.tputs(terminal.getStringCapability(Capability.exit_alt_charset_mode)));
+			}
+		}
+	}
+
+	/**
+	 * Write a character, or a surrogate pair starting at it, returning the index
+	 * of the last character used.
+	 */
+	private int character(AttributedCharSequence text, char c, int i, int length) {
+		if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+			codePoint(Character.toCodePoint(c, text.charAt(i + 1)));
+			return i + 1;
+		} else if (Character.isSurrogate(c)) {
+			ensure(1);
+			bytes.put((byte) '?');
+		} else {
+			codePoint(c);
+		}
+		return i;
+	}
+
+	private void codePoint(int cp) {
+		ensure(4);
+		if (cp < 0x80) {
+			bytes.put((byte) cp);
+		} else if (cp < 0x800) {
+			bytes.put((byte) (0xc0 | (cp >> 6)));
+			bytes.put((byte) (0x80 | (cp & 0x3f)));
+		} else if (cp < 0x10000) {
+			bytes.put((byte) (0xe0 | (cp >> 12)));
+			bytes.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+			bytes.put((byte) (0x80 | (cp & 0x3f)));
+		} else {
+			bytes.put((byte) (0xf0 | (cp >> 18)));
+			bytes.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+			bytes.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+			bytes.put((byte) (0x80 | (cp & 0x3f)));
+		}
+	}
+
+	private void flag(long d, long to, long flag, int on) {
+		if ((d & flag) != 0)
+			attr((to & flag) == 0 ? 20 + on : on);
+	}
+
+	/**
+	 * Write a true colour, or get the palette index to write instead, or -1 if
+	 * there is neither.
+	 */
+	private int color(long style, long rgb, long ind, int exp, int extended) {
+		if ((style & rgb) != 0) {
+			var r = (int) (style >> (exp + 16)) & 0xff;
+			var g = (int) (style >> (exp + 8)) & 0xff;
+			var b = (int) (style >> exp) & 0xff;
+			if (colors >= HIGH_COLORS) {
+				attr(extended);
+				attr(2);
+				attr(r);
+				attr(g);
+				attr(b);
+				return -1;
+			}
+			return palette.round(r, g, b);
+		} else if ((style & ind) != 0) {
+			return palette.round((int) (style >> exp) & 0xff);
+		}
+		return -1;
+	}
+
+	private void attr(int value) {
+		if (first)
+			first = false;
+		else
+			bytes.put((byte) ';');
+		if (value >= 100)
+			bytes.put((byte) ('0' + value / 100));
+		if (value >= 10)
+			bytes.put((byte) ('0' + (value / 10) % 10));
+		bytes.put((byte) ('0' + value % 10));
+	}
+
+	private void raw(byte[] data) {
+		ensure(data.length);
+		bytes.put(data);
+	}
+
+	private void ensure(int size) {
+		if (bytes.remaining() < size) {
+			var nb = ByteBuffer.allocate(Math.max(bytes.capacity() * 2, bytes.position() + size));
+			bytes.flip();
+			nb.put(bytes);
+			bytes = nb;
+		}
+	}
+
+	private static byte[] bytes(String str) {
+		return str == null ? null : str.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Map box drawing characters to the alternate character set, as JLine does.
+	 */
+	private static char alternate(char c) {
+		switch (c) {
+		case '┘':
+			return 'j';
+		case '┐':
+			return 'k';
+		case '┌':
+			return 'l';
+		case '└':
+			return 'm';
+		case '┼':
+			return 'n';
+		case '─':
+			return 'q';
+		case '├':
+			return 't';
+		case '┤':
+			return 'u';
+		case '┴':
+			return 'v';
+		case '┬':
+			return 'w';
+		case '│':
+			return 'x';
+		default:
+			return c;
+		}
+	}
+}
@@ -9,5 +9,34 @@ public interface Bitmap extends Twidget {
 	public enum ImageSourceFormat {
 		RGB, RGBA, PNG, GIF, JPEG, BMP
 	}
+	
+	/**
+	 * How image data reaches the terminal. Anything other than {@link #DIRECT}
+	 * requires the terminal to be able to read this machine's file system, so is
+	 * only used when the terminal is local, and is currently only supported by
+	 * the Kitty graphics protocol.
+	 */
+	public enum ImageTransmission {
+		/**
+		 * Base64 encoded in the escape sequences themselves.
+		 */
+		DIRECT,
+		/**
+		 * The path of the image file is sent. Images that are not read from a file
+		 * are transmitted as {@link #TEMP_FILE}.
+		 */
+		FILE,
+		/**
+		 * The image is written to a temporary file, whose path is sent. The
+		 * terminal deletes the file once read.
+		 */
+		TEMP_FILE,
+		/**
+		 * The image is written to a shared memory object, whose name is sent. The
+		 * terminal removes the object once read. Falls back to {@link #TEMP_FILE}
+		 * where POSIX shared memory is not available as {@code /dev/shm}.
+		 */
+		SHARED_MEMORY
+	}
 
 }
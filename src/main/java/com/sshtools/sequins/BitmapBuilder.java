@@ -6,19 +6,108 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 import com.sshtools.sequins.Bitmap.ImageDisplayMethod;
 import com.sshtools.sequins.Bitmap.ImageSourceFormat;
+import com.sshtools.sequins.Bitmap.ImageTransmission;
 
 public abstract class BitmapBuilder {
+
+	/**
+	 * Opens the image data. May be called more than once, so implementations
+	 * that stream the image when drawing need not keep a copy of it.
+	 */
+	@FunctionalInterface
+	protected interface Source {
+		InputStream open() throws IOException;
+
+		/**
+		 * Get the file the image is read from, if it is a file.
+		 *
+		 * @return path
+		 */
+		default Optional<Path> path() {
+			return Optional.empty();
+		}
+
+		/**
+		 * Get the buffer the image is read from, if it is a buffer. The caller may
+		 * change its contents between draws.
+		 *
+		 * @return buffer
+		 */
+		default Optional<ByteBuffer> buffer() {
+			return Optional.empty();
+		}
+
+		/**
+		 * Get the width of the image in pixels, if the source knows it. This takes
+		 * precedence over {@link BitmapBuilder#withSourceWidth(int)}.
+		 *
+		 * @return width
+		 */
+		default Optional<Integer> width() {
+			return Optional.empty();
+		}
+
+		/**
+		 * Get the height of the image in pixels, if the source knows it. This takes
+		 * precedence over {@link BitmapBuilder#withSourceHeight(int)}.
+		 *
+		 * @return height
+		 */
+		default Optional<Integer> height() {
+			return Optional.empty();
+		}
+	}
+
+	private final static class BufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		private BufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+			if (!buffer.hasRemaining())
+				return -1;
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
 	private Optional<ImageSourceFormat> format = Optional.empty();
+	private Optional<Executor> executor = Optional.empty();
 	
 	protected Optional<Integer> width = Optional.empty();
 	protected Optional<Integer> height = Optional.empty();
 	protected Optional<ImageDisplayMethod> display = Optional.empty();
+	protected Optional<ImageTransmission> transmission = Optional.empty();
+	protected Optional<Integer> columns = Optional.empty();
+	protected Optional<Integer> rows = Optional.empty();
 	protected boolean failIfUnspported;
 	
 	public BitmapBuilder withFailIfUnsupported() {
@@ -35,6 +124,49 @@ public abstract class BitmapBuilder {
 		return this;
 	}
 
+	/**
+	 * Use a transmission mode other than {@link ImageTransmission#DIRECT} when
+	 * the terminal is local and supports it, avoiding the cost of encoding the
+	 * image and sending it through the terminal.
+	 *
+	 * @param transmission transmission
+	 * @return this for chaining
+	 */
+	public BitmapBuilder withTransmission(ImageTransmission transmission) {
+		this.transmission = Optional.of(transmission);
+		return this;
+	}
+
+	/**
+	 * Set the executor that the asynchronous build methods decode and encode
+	 * images on. By default this is the common fork join pool.
+	 *
+	 * @param executor executor
+	 * @return this for chaining
+	 */
+	public BitmapBuilder withExecutor(Executor executor) {
+		this.executor = Optional.of(executor);
+		return this;
+	}
+
+	/**
+	 * Set the number of character cells the image should fit in. Where the
+	 * pixel size of a cell can be found out from the terminal, RGB and RGBA
+	 * images larger than that are scaled down before they are encoded, keeping
+	 * their aspect ratio, so the size of what is sent depends on the area of
+	 * the screen covered rather than the size of the source. Otherwise, Kitty
+	 * terminals are asked to scale the image to the number of columns.
+	 *
+	 * @param columns columns
+	 * @param rows    rows
+	 * @return this for chaining
+	 */
+	public BitmapBuilder withCellSize(int columns, int rows) {
+		this.columns = Optional.of(columns);
+		this.rows = Optional.of(rows);
+		return this;
+	}
+
 	public BitmapBuilder withSourceWidth(int width) {
 		this.width = Optional.of(width);
 		return this;
@@ -93,19 +225,130 @@ public abstract class BitmapBuilder {
 	}
 
 	public Bitmap build(Path file) {
-		try (var in = Files.newInputStream(file)) {
-			return build(in, format.orElseGet(() -> determineFormat(file).orElseThrow(() -> new IllegalStateException(
-					"Image format could not be determined automatically so it must be speified."))));
-		} catch (IOException ioe) {
-			throw new UncheckedIOException(ioe);
-		}
+		if (!Files.isReadable(file))
+			throw new UncheckedIOException(new FileNotFoundException(file.toString()));
+		return build(new Source() {
+			@Override
+			public InputStream open() throws IOException {
+				return Files.newInputStream(file);
+			}
+
+			@Override
+			public Optional<Path> path() {
+				return Optional.of(file);
+			}
+		}, format.orElseGet(() -> determineFormat(file).orElseThrow(() -> new IllegalStateException(
+				"Image format could not be determined automatically so it must be speified."))));
+	}
+
+	/**
+	 * Build a bitmap from pixels already in memory, such as a frame buffer. The
+	 * pixels from the buffer's position to its limit are encoded straight from
+	 * the buffer, whether it is a heap, direct or mapped buffer. Kitty bitmaps
+	 * read the buffer each time they are drawn, so show any changes made to it
+	 * since, while Sixel bitmaps read it once when built.
+	 *
+	 * @param pixels pixels
+	 * @param width  width in pixels
+	 * @param height height in pixels
+	 * @param format format of pixels
+	 * @return bitmap
+	 */
+	public Bitmap build(ByteBuffer pixels, int width, int height, ImageSourceFormat format) {
+		return build(source(pixels, width, height, format), format);
+	}
+
+	protected final Source source(ByteBuffer pixels, int width, int height, ImageSourceFormat format) {
+		var bpp = format == ImageSourceFormat.RGBA ? 4 : (format == ImageSourceFormat.RGB ? 3 : 0);
+		if ((long) width * height * bpp > pixels.remaining())
+			throw new IllegalArgumentException("Buffer is too small for a " + width + "x" + height + " " + format + " image.");
+		return new Source() {
+			@Override
+			public InputStream open() {
+				return new BufferInputStream(pixels.duplicate());
+			}
+
+			@Override
+			public Optional<ByteBuffer> buffer() {
+				return Optional.of(pixels);
+			}
+
+			@Override
+			public Optional<Integer> width() {
+				return Optional.of(width);
+			}
+
+			@Override
+			public Optional<Integer> height() {
+				return Optional.of(height);
+			}
+		};
 	}
 
+	/**
+	 * Build a bitmap over pixels that will keep changing, for which only the
+	 * changes are sent after it is first drawn. See
+	 * {@link #build(ByteBuffer, int, int, ImageSourceFormat)}.
+	 *
+	 * @param pixels pixels
+	 * @param width  width in pixels
+	 * @param height height in pixels
+	 * @param format format of pixels, either RGB or RGBA
+	 * @return bitmap
+	 */
+	public abstract AnimatedBitmap buildAnimated(ByteBuffer pixels, int width, int height, ImageSourceFormat format);
+
 	public Bitmap build(InputStream in) {
 		return build(in, format
 				.orElseThrow(() -> new IllegalStateException("Format must be specified when just using a stream.")));
 	}
 
+	/**
+	 * Build a bitmap in the background, including any encoding that can be done
+	 * ahead of drawing it. The builder should not be reconfigured until the
+	 * returned future is complete.
+	 *
+	 * @param resource resource
+	 * @return future bitmap
+	 */
+	public CompletableFuture<Bitmap> buildAsync(String resource) {
+		return async(() -> build(resource));
+	}
+
+	public CompletableFuture<Bitmap> buildAsync(URL url) {
+		return async(() -> build(url));
+	}
+
+	public CompletableFuture<Bitmap> buildAsync(File file) {
+		return async(() -> build(file));
+	}
+
+	public CompletableFuture<Bitmap> buildAsync(Path file) {
+		return async(() -> build(file));
+	}
+
+	public CompletableFuture<Bitmap> buildAsync(InputStream in) {
+		return async(() -> build(in));
+	}
+
+	/**
+	 * Build many bitmaps in parallel, each as {@link #buildAsync(Path)} does.
+	 *
+	 * @param files files
+	 * @return future bitmaps, in the same order as the files
+	 */
+	public CompletableFuture<List<Bitmap>> buildAllAsync(Collection<Path> files) {
+		var futures = files.stream().map(this::buildAsync).toList();
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+				.thenApply(v -> futures.stream().map(CompletableFuture::join).toList());
+	}
+
+	private CompletableFuture<Bitmap> async(Supplier<Bitmap> task) {
+		Supplier<Bitmap> prepared = () -> prepare(task.get());
+		return executor.map(e -> CompletableFuture.supplyAsync(prepared, e))
+				.orElseGet(() -> CompletableFuture.supplyAsync(prepared));
+	}
+
 	private Optional<ImageSourceFormat> determineFormatFromMime(String mime) {
 		if (mime != null && mime.equalsIgnoreCase("image/png"))
 			return Optional.of(ImageSourceFormat.PNG);
@@ -124,5 +367,24 @@ public abstract class BitmapBuilder {
 			return Optional.empty();
 	}
 
+	protected Bitmap build(Source source, ImageSourceFormat format) {
+		try (var in = source.open()) {
+			return build(in, format);
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+
 	protected abstract Bitmap build(InputStream in, ImageSourceFormat format);
+
+	/**
+	 * Do any work needed to draw a bitmap that can be done in advance. Called on
+	 * the executor by the asynchronous build methods.
+	 *
+	 * @param bitmap bitmap
+	 * @return bitmap
+	 */
+	protected Bitmap prepare(Bitmap bitmap) {
+		return bitmap;
+	}
 }
@@ -0,0 +1,43 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins;
+
+import java.util.Optional;
+
+import com.sshtools.sequins.Bitmap.ImageDisplayMethod;
+
+/**
+ * What has been found out about a terminal by asking it.
+ *
+ * @param imageDisplayMethod graphics protocol supported, if any
+ * @param version            name and version the terminal reported, if any
+ * @param cellWidth          width of a character cell in pixels, if known
+ * @param cellHeight         height of a character cell in pixels, if known
+ * @param trueColor          whether 24 bit colour is supported
+ */
+public record Capabilities(Optional<ImageDisplayMethod> imageDisplayMethod, Optional<String> version,
+		Optional<Integer> cellWidth, Optional<Integer> cellHeight, boolean trueColor) {
+
+	/**
+	 * Capabilities of a terminal that could not be asked, or did not answer.
+	 *
+	 * @param trueColor whether 24 bit colour is supported
+	 * @return capabilities
+	 */
+	public static Capabilities none(boolean trueColor) {
+		return new Capabilities(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), trueColor);
+	}
+}
@@ -52,6 +52,11 @@ public class InterruptableProgress implements Progress {
 		delegate.progressed(percent);
 	}
 
+	@Override
+	public void progressed(long done, long total) {
+		delegate.progressed(done, total);
+	}
+
 	@Override
 	public void progressed(String message, Object... args) {
 		delegate.progressed(message, args);
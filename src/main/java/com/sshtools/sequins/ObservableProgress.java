@@ -29,6 +29,14 @@ public class ObservableProgress implements Progress {
 
 		void progressed(Progress progress, Optional<Integer> percent, Optional<String> message, Object... args);
 
+		default void progressed(Progress progress, int percent) {
+			progressed(progress, Optional.of(percent), Optional.empty());
+		}
+
+		default void progressed(Progress progress, long done, long total) {
+			progressed(progress, Optional.of(Progress.percent(done, total)), Optional.empty());
+		}
+
 		void closed(Progress progress);
 	}
 
@@ -120,6 +128,38 @@ public class ObservableProgress implements Progress {
 		}
 	}
 
+	@Override
+	public void progressed(int percent) {
+		delegate.progressed(percent);
+		if (root.isPresent()) {
+			root.get().doProgressed(this, percent);
+		} else {
+			doProgressed(this, percent);
+		}
+	}
+
+	@Override
+	public void progressed(long done, long total) {
+		delegate.progressed(done, total);
+		if (root.isPresent()) {
+			root.get().doProgressed(this, done, total);
+		} else {
+			doProgressed(this, done, total);
+		}
+	}
+
+	void doProgressed(Progress progress, int percent) {
+		for (var l : listeners) {
+			l.progressed(progress, percent);
+		}
+	}
+
+	void doProgressed(Progress progress, long done, long total) {
+		for (var l : listeners) {
+			l.progressed(progress, done, total);
+		}
+	}
+
 	void doProgressed(Progress progress, Optional<Integer> percent, Optional<String> message, Object... args) {
 		for (var l : listeners) {
 			l.progressed(progress, percent, message, args);
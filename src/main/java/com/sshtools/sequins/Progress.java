@@ -31,6 +31,12 @@ public interface Progress extends Closeable {
 			throw new CancelledException();
 	}
 	
+	public static int percent(long done, long total) {
+		if(total <= 0)
+			return 0;
+		return (int) Math.min(100, (((double) done / (double) total) * 100d));
+	}
+	
 	@SuppressWarnings("serial")
 	class CancelledException extends RuntimeException{
 	}
@@ -59,6 +65,18 @@ public interface Progress extends Closeable {
 		progressed(Optional.of(percent), Optional.empty());
 	}
 
+	/**
+	 * Report progress as an amount done out of a total. Implementations override
+	 * this so that it allocates nothing, making it suitable for calling on
+	 * every buffer of a transfer.
+	 * 
+	 * @param done amount done
+	 * @param total total amount
+	 */
+	default void progressed(long done, long total) {
+		progressed(percent(done, total));
+	}
+
 	default void progressed(String message, Object... args) {
 		progressed(Optional.empty(), Optional.of(message), args);
 	}
@@ -96,6 +114,14 @@ public interface Progress extends Closeable {
 			@Override
 			public void progressed(Optional<Integer> percent, Optional<String> message, Object... args) {
 			}
+
+			@Override
+			public void progressed(int percent) {
+			}
+
+			@Override
+			public void progressed(long done, long total) {
+			}
 			
 			@Override
 			public Progress newJob(String name, Object... args) {
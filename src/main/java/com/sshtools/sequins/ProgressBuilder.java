@@ -22,6 +22,7 @@ public abstract class ProgressBuilder {
 
 	protected boolean indeterminate;
 	protected boolean percentageText;
+	protected boolean transferStats;
 	protected Optional<Long> rateLimit = Optional.empty();
 	protected boolean interruptable;
 	protected boolean timing = !System.getProperty("sequins.timeProgress", "false").equals("false");
@@ -29,6 +30,7 @@ public abstract class ProgressBuilder {
 	protected Object[] args;
 	protected Duration spinnerStartDelay = Duration.ofSeconds(1);
 	protected boolean hideCursor;
+	protected boolean liveRegion;
 	
 	
 	public ProgressBuilder withMessage(String message, Object... args) {
@@ -52,6 +54,23 @@ public abstract class ProgressBuilder {
 		return this;
 	}
 
+	/**
+	 * Show the amount transferred, the rate and the estimated time remaining
+	 * when progress is reported using {@link Progress#progressed(long, long)}.
+	 * The display is then refreshed as the amount changes, at a rate suitable
+	 * for the terminal, rather than only when the percentage changes.
+	 * 
+	 * @return this for chaining
+	 */
+	public ProgressBuilder withTransferStats() {
+		return withTransferStats(true);
+	}
+
+	public ProgressBuilder withTransferStats(boolean transferStats) {
+		this.transferStats = transferStats;
+		return this;
+	}
+
 	public ProgressBuilder withInterruptable() {
 		this.interruptable = true;
 		return this;
@@ -75,6 +94,15 @@ public abstract class ProgressBuilder {
 		return this;
 	}
 
+	public ProgressBuilder withLiveRegion() {
+		return withLiveRegion(true);
+	}
+
+	public ProgressBuilder withLiveRegion(boolean liveRegion) {
+		this.liveRegion = liveRegion;
+		return this;
+	}
+
 	public ProgressBuilder withRateLimit() {
 		return withRateLimit(500);
 	}
@@ -103,6 +131,10 @@ public abstract class ProgressBuilder {
 		return hideCursor;
 	}
 
+	public final boolean liveRegion() {
+		return liveRegion;
+	}
+
 	public final Duration spinnerStartDelay() {
 		return spinnerStartDelay;
 	}
@@ -115,6 +147,10 @@ public abstract class ProgressBuilder {
 		return percentageText;
 	}
 
+	public final boolean transferStats() {
+		return transferStats;
+	}
+
 	public final Optional<Long> rateLimit() {
 		return rateLimit;
 	}
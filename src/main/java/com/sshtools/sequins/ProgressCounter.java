@@ -0,0 +1,85 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Counts bytes for the progressing streams and channels, only checking for
+ * cancellation and reporting progress once enough bytes or time have passed.
+ */
+final class ProgressCounter {
+
+	final static long DEFAULT_REPORT_EVERY = 64 * 1024;
+
+	private final Progress progress;
+	private final long length;
+
+	private long reportEvery = DEFAULT_REPORT_EVERY;
+	private long reportInterval;
+	private long nextReport;
+	private long bytes;
+	private long reported;
+
+	ProgressCounter(Progress progress, long length) {
+		this.progress = progress;
+		this.length = length;
+	}
+
+	void reportEvery(long bytes) {
+		if (bytes < 1)
+			throw new IllegalArgumentException("Must report at least every byte.");
+		reportEvery = bytes;
+		reportInterval = 0;
+	}
+
+	void reportInterval(Duration interval) {
+		if (interval.isNegative() || interval.isZero())
+			throw new IllegalArgumentException("Interval must be positive.");
+		reportEvery = Long.MAX_VALUE;
+		reportInterval = interval.toNanos();
+		nextReport = System.nanoTime() + reportInterval;
+	}
+
+	void count(long amount) throws IOException {
+		bytes += amount;
+		if (bytes != length) {
+			if (reportInterval == 0) {
+				if (bytes - reported < reportEvery)
+					return;
+			} else {
+				var now = System.nanoTime();
+				if (now - nextReport < 0)
+					return;
+				nextReport = now + reportInterval;
+			}
+		}
+		report();
+	}
+
+	void flush() throws IOException {
+		if (reported != bytes)
+			report();
+	}
+
+	private void report() throws IOException {
+		reported = bytes;
+		if(progress.isCancelled())
+			throw new IOException("Cancelled.");
+		progress.progressed(bytes, length);
+	}
+}
@@ -18,24 +18,48 @@ package com.sshtools.sequins;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
 
 public class ProgressingInputStream extends FilterInputStream {
 
-	private final long length;
-	private final Progress progress;
-	private long bytes;
+	private final ProgressCounter counter;
 
 	public ProgressingInputStream(InputStream in, Progress progress, long length) {
 		super(in);
-		this.progress = progress;
-		this.length = length;
+		this.counter = new ProgressCounter(progress, length);
+	}
+
+	/**
+	 * Report progress (and check for cancellation) each time at least this
+	 * many bytes have passed, defaulting to 64 KiB.
+	 *
+	 * @param bytes bytes between reports
+	 * @return this for chaining
+	 */
+	public ProgressingInputStream withReportEvery(long bytes) {
+		counter.reportEvery(bytes);
+		return this;
+	}
+
+	/**
+	 * Report progress (and check for cancellation) at most once per interval
+	 * instead of by amount.
+	 *
+	 * @param interval interval between reports
+	 * @return this for chaining
+	 */
+	public ProgressingInputStream withReportInterval(Duration interval) {
+		counter.reportInterval(interval);
+		return this;
 	}
 
 	@Override
 	public int read() throws IOException {
 		var r = super.read();
-		if (r != -1) {
-			progress(1);
+		if (r == -1) {
+			counter.flush();
+		} else {
+			counter.count(1);
 		}
 		return r;
 	}
@@ -43,17 +67,21 @@ public class ProgressingInputStream extends FilterInputStream {
 	@Override
 	public int read(byte[] b, int off, int len) throws IOException {
 		var r = super.read(b, off, len);
-		if (r != -1) {
-			progress(r);
+		if (r == -1) {
+			counter.flush();
+		} else {
+			counter.count(r);
 		}
 		return r;
 	}
 
-	void progress(int amount) throws IOException {
-		bytes += amount;
-		if(progress.isCancelled())
-			throw new IOException("Cancelled.");
-		progress.progressed((int) ((((double) bytes) / (double) length) * (double) 100));
+	@Override
+	public void close() throws IOException {
+		try {
+			counter.flush();
+		} finally {
+			super.close();
+		}
 	}
 
 }
@@ -0,0 +1,78 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+
+public class ProgressingOutputStream extends FilterOutputStream {
+
+	private final ProgressCounter counter;
+
+	public ProgressingOutputStream(OutputStream out, Progress progress, long length) {
+		super(out);
+		this.counter = new ProgressCounter(progress, length);
+	}
+
+	/**
+	 * Report progress (and check for cancellation) each time at least this
+	 * many bytes have passed, defaulting to 64 KiB.
+	 *
+	 * @param bytes bytes between reports
+	 * @return this for chaining
+	 */
+	public ProgressingOutputStream withReportEvery(long bytes) {
+		counter.reportEvery(bytes);
+		return this;
+	}
+
+	/**
+	 * Report progress (and check for cancellation) at most once per interval
+	 * instead of by amount.
+	 *
+	 * @param interval interval between reports
+	 * @return this for chaining
+	 */
+	public ProgressingOutputStream withReportInterval(Duration interval) {
+		counter.reportInterval(interval);
+		return this;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		counter.count(1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		/* FilterOutputStream would write this a byte at a time */
+		out.write(b, off, len);
+		counter.count(len);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			counter.flush();
+		} finally {
+			super.close();
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+
+public class ProgressingWritableByteChannel implements WritableByteChannel {
+
+	private final WritableByteChannel channel;
+	private final ProgressCounter counter;
+
+	public ProgressingWritableByteChannel(WritableByteChannel channel, Progress progress, long length) {
+		this.channel = channel;
+		this.counter = new ProgressCounter(progress, length);
+	}
+
+	/**
+	 * Report progress (and check for cancellation) each time at least this
+	 * many bytes have passed, defaulting to 64 KiB.
+	 *
+	 * @param bytes bytes between reports
+	 * @return this for chaining
+	 */
+	public ProgressingWritableByteChannel withReportEvery(long bytes) {
+		counter.reportEvery(bytes);
+		return this;
+	}
+
+	/**
+	 * Report progress (and check for cancellation) at most once per interval
+	 * instead of by amount.
+	 *
+	 * @param interval interval between reports
+	 * @return this for chaining
+	 */
+	public ProgressingWritableByteChannel withReportInterval(Duration interval) {
+		counter.reportInterval(interval);
+		return this;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		var w = channel.write(src);
+		if (w > 0) {
+			counter.count(w);
+		}
+		return w;
+	}
+
+	/**
+	 * Transfer from a file to this channel, keeping the zero-copy path
+	 * {@link FileChannel#transferTo(long, long, WritableByteChannel)} offers
+	 * for the underlying channel. Progress is counted after each chunk.
+	 *
+	 * @param source file to read from
+	 * @param position position in file
+	 * @param count maximum number of bytes to transfer
+	 * @return number of bytes transferred
+	 * @throws IOException on error
+	 */
+	public long transferFrom(FileChannel source, long position, long count) throws IOException {
+		var total = 0l;
+		while (total < count) {
+			var w = source.transferTo(position + total,
+					Math.min(ProgressingReadableByteChannel.TRANSFER_CHUNK, count - total), channel);
+			if (w <= 0)
+				break;
+			total += w;
+			counter.count(w);
+		}
+		return total;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			counter.flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+}
@@ -18,49 +18,53 @@ package com.sshtools.sequins;
 import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class RateLimitedProgress implements Progress {
 
 	private final long ms;
-	private final ScheduledExecutorService executor;
+	private final TimerWheel timer;
 	private final Progress delegate;
-	private final boolean root;
-	private ScheduledFuture<?> task;
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final TimerWheel.Task task = new TimerWheel.Task() {
+		@Override
+		void fire() {
+			scheduled.set(false);
+			deliver();
+		}
+	};
+	private final static int OPTIONAL = 0;
+	private final static int PERCENT = 1;
+	private final static int AMOUNT = 2;
+
+	private boolean pending;
+	private int kind;
+	private int pendingPercent;
+	private long done;
+	private long total;
 	private Optional<String> message;
 	private Optional<Integer> percent;
 	private Object[] args;
 	private final Object lock = new Object();
+	private final Object deliverLock = new Object();
 
 	RateLimitedProgress(Progress delegate, long ms) {
 		this.delegate = delegate;
 		this.ms = ms;
-		this.root = true;
-		executor = Executors.newScheduledThreadPool(1);
+		this.timer = TimerWheel.shared();
 	}
 
 	RateLimitedProgress(RateLimitedProgress root, Progress delegate) {
 		this.delegate = delegate;
-		this.executor = root.executor;
+		this.timer = root.timer;
 		this.ms = root.ms;
-		this.root = false;
 	}
 
 	@Override
 	public void close() throws IOException {
-		finishTask();
-		try {
-			delegate.close();
-		}
-		finally {
-			if(root) {
-				executor.shutdown();
-			}
-		}
+		deliver();
+		delegate.close();
 	}
 
 	@Override
@@ -75,7 +79,7 @@ public class RateLimitedProgress implements Progress {
 
 	@Override
 	public Progress newJob(String name, Object... args) {
-		finishTask();
+		deliver();
 		return new RateLimitedProgress(this, delegate.newJob(name, args));
 	}
 
@@ -85,26 +89,36 @@ public class RateLimitedProgress implements Progress {
 			this.message = message;
 			this.percent = percent;
 			this.args = args;
+			this.pending = true;
+			this.kind = OPTIONAL;
 		}
-		if (task == null || task.isDone()) {
-			task = executor.schedule(() -> {
-				Optional<String> fmsg;
-				Optional<Integer> fpc;
-				Object[] fargs;
-				synchronized (lock) {
-					fmsg = RateLimitedProgress.this.message;
-					fpc = RateLimitedProgress.this.percent;
-					fargs = RateLimitedProgress.this.args;
-				}
-				delegate.progressed(fpc, fmsg, fargs);
-			}, ms, TimeUnit.MILLISECONDS);
+		schedule();
+	}
+
+	@Override
+	public void progressed(int percent) {
+		synchronized (lock) {
+			this.pendingPercent = percent;
+			this.pending = true;
+			this.kind = PERCENT;
 		}
+		schedule();
+	}
 
+	@Override
+	public void progressed(long done, long total) {
+		synchronized (lock) {
+			this.done = done;
+			this.total = total;
+			this.pending = true;
+			this.kind = AMOUNT;
+		}
+		schedule();
 	}
 
 	@Override
 	public void message(Level level, String message, Object... args) {
-		finishTask();
+		deliver();
 		delegate.message(level, message, args);
 	}
 	
@@ -112,11 +126,43 @@ public class RateLimitedProgress implements Progress {
 		return new RateLimitedProgress(delegate, ms);
 	}
 
-	private void finishTask() {
-		if (task != null) {
-			try {
-				task.get();
-			} catch (InterruptedException | ExecutionException e) {
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			timer.schedule(task, ms, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void deliver() {
+		synchronized (deliverLock) {
+			Optional<String> fmsg;
+			Optional<Integer> fpc;
+			Object[] fargs;
+			long fdone;
+			long ftotal;
+			int fpercent;
+			int fkind;
+			synchronized (lock) {
+				if (!pending)
+					return;
+				pending = false;
+				fkind = kind;
+				fpercent = pendingPercent;
+				fdone = done;
+				ftotal = total;
+				fmsg = message;
+				fpc = percent;
+				fargs = args;
+			}
+			switch (fkind) {
+			case PERCENT:
+				delegate.progressed(fpercent);
+				break;
+			case AMOUNT:
+				delegate.progressed(fdone, ftotal);
+				break;
+			default:
+				delegate.progressed(fpc, fmsg, fargs);
+				break;
 			}
 		}
 	}
@@ -16,12 +16,19 @@
 package com.sshtools.sequins;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.WritableByteChannel;
-import java.text.MessageFormat;
-import java.util.regex.Pattern;
-
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.jline.terminal.Terminal;
+import org.jline.utils.AttributedString;
 import org.jline.utils.AttributedStringBuilder;
 import org.jline.utils.AttributedStyle;
 
@@ -76,6 +83,8 @@ public abstract class Sequence {
 		
 	}
 
+	private final static int MAX_FILL = 4096;
+
 	public final static char NL = 0x0a;
 	public final static char CR = 0x0d;
 	public final static char VT = 0x0b;
@@ -109,6 +118,10 @@ public abstract class Sequence {
 	private int maxTextLength = Integer.MAX_VALUE;
 	private final boolean readOnly;
 	protected AttributedStringBuilder buffer;
+	private AnsiEncoder encoder;
+	private CharsetDecoder decoder;
+	private char[] fill;
+	private CharBuffer decoded;
 
 	Sequence(boolean readOnly) {
 		this.readOnly = readOnly;
@@ -122,6 +135,21 @@ public abstract class Sequence {
 		this(false);
 	}
 	
+	/**
+	 * Clear all text and styles so the sequence (and its buffers) can be used
+	 * again.
+	 *
+	 * @return this for chaining
+	 */
+	public Sequence reset() {
+		if(readOnly)
+			throw new IllegalStateException("Read only.");
+		buffer.setLength(0);
+		buffer.style(AttributedStyle.DEFAULT);
+		maxTextLength = Integer.MAX_VALUE;
+		return this;
+	}
+
 	public int maxTextLength() {
 		return maxTextLength;
 	}
@@ -171,8 +199,12 @@ public abstract class Sequence {
 			repeat = maxTextLength - textLength();
 		}
 		
-		for(int i = 0 ; i < repeat; i++)
+		if(repeat == 1)
 			buffer.append((char) (character & 0xff));
+		else if(repeat > 1) {
+			Arrays.fill(fill(repeat), 0, repeat, (char) (character & 0xff));
+			appendFill(repeat);
+		}
 		return this;
 		
 	}
@@ -190,10 +222,12 @@ public abstract class Sequence {
 			repeat = maxTextLength - textLength();
 		}
 		
-		for(int i = 0 ; i < repeat; i++)
-			//buffer.appendAnsi(Character.toString(character));
+		if(repeat == 1)
 			buffer.append(character);
-
+		else if(repeat > 1) {
+			Arrays.fill(fill(repeat), 0, repeat, character);
+			appendFill(repeat);
+		}
 		return this;
 	}
 
@@ -202,7 +236,34 @@ public abstract class Sequence {
 	}
 	
 	public final WritableByteChannel channel() {
+		return channel(false);
+	}
+
+	/**
+	 * Get a channel that appends everything written to it to this sequence. Text
+	 * is decoded as UTF-8, with multi-byte characters that are split across
+	 * writes handled. In raw mode each byte is appended as a single character
+	 * without decoding, as {@link #b(byte)} does, which suits 7-bit payloads
+	 * such as image data.
+	 *
+	 * @param raw append bytes without decoding
+	 * @return channel
+	 */
+	public final WritableByteChannel channel(boolean raw) {
+		if(readOnly)
+			throw new IllegalStateException("Read only.");
+		if(!raw) {
+			if(decoder == null) {
+				decoder = StandardCharsets.UTF_8.newDecoder().
+						onMalformedInput(CodingErrorAction.REPLACE).
+						onUnmappableCharacter(CodingErrorAction.REPLACE);
+				decoded = CharBuffer.allocate(1024);
+			}
+			else
+				decoder.reset();
+		}
 		return new WritableByteChannel() {
+			private final ByteBuffer partial = raw ? null : ByteBuffer.allocate(8);
 			private boolean open = true;
 
 			@Override
@@ -212,19 +273,78 @@ public abstract class Sequence {
 			
 			@Override
 			public void close() throws IOException {
-				open = false;
+				if(open) {
+					open = false;
+					if(!raw) {
+						partial.flip();
+						decode(partial, true);
+						decoder.flush(decoded);
+						appendDecoded();
+					}
+				}
 			}
 			
 			@Override
 			public int write(ByteBuffer src) throws IOException {
-				var d = new byte[src.remaining()];
-				src.get(d);
-				buffer.append(new String(d, "UTF-8"));
-				return 0;
+				if(!open)
+					throw new ClosedChannelException();
+				var len = src.remaining();
+				if(raw) {
+					var arr = fill(len);
+					for(int i = 0; i < len; i++)
+						arr[i] = (char) (src.get() & 0xff);
+					appendFill(len);
+				}
+				else {
+					/* Complete any character left over from the last write */
+					while(partial.position() > 0 && src.hasRemaining()) {
+						partial.put(src.get());
+						partial.flip();
+						decode(partial, false);
+						partial.compact();
+					}
+					decode(src, false);
+					partial.put(src);
+				}
+				return len;
+			}
+
+			private void decode(ByteBuffer in, boolean endOfInput) {
+				while(decoder.decode(in, decoded, endOfInput).isOverflow()) {
+					appendDecoded();
+				}
+				appendDecoded();
 			}
 		};
 	}
 
+	private char[] fill(int length) {
+		if(length > MAX_FILL)
+			return fill = new char[length];
+		if(fill == null || fill.length < length)
+			fill = new char[Math.max(64, Integer.highestOneBit(length - 1) << 1)];
+		return fill;
+	}
+
+	/* Copy the first unit chars over the rest of the array, doubling each time */
+	private static void repeatFill(char[] arr, int unit, int length) {
+		for(var filled = unit; filled < length; filled *= 2) {
+			System.arraycopy(arr, 0, arr, filled, Math.min(filled, length - filled));
+		}
+	}
+
+	private void appendFill(int length) {
+		buffer.append(CharBuffer.wrap(fill, 0, length));
+		if(fill.length > MAX_FILL)
+			fill = null;
+	}
+
+	private void appendDecoded() {
+		decoded.flip();
+		buffer.append(decoded);
+		decoded.clear();
+	}
+
 	public final Sequence cp(int repeat, int codepoint) {
 		if(readOnly)
 			throw new IllegalStateException("Read only.");
@@ -232,10 +352,24 @@ public abstract class Sequence {
 		if(textLength() + repeat > maxTextLength) {
 			repeat = maxTextLength - textLength();
 		}
-		for(int i = 0 ; i < repeat; i++)
-			//buffer.appendAnsi(Character.toString(character));
-			buffer.append(Character.toString(codepoint));
-
+		if(repeat < 1)
+			return this;
+		if(Character.isBmpCodePoint(codepoint)) {
+			if(repeat == 1)
+				buffer.append((char) codepoint);
+			else {
+				Arrays.fill(fill(repeat), 0, repeat, (char) codepoint);
+				appendFill(repeat);
+			}
+		}
+		else {
+			var len = repeat * 2;
+			var arr = fill(len);
+			arr[0] = Character.highSurrogate(codepoint);
+			arr[1] = Character.lowSurrogate(codepoint);
+			repeatFill(arr, 2, len);
+			appendFill(len);
+		}
 		return this;
 	}
 
@@ -265,19 +399,18 @@ public abstract class Sequence {
 			throw new IllegalStateException("Read only.");
 		
 		var str = String.valueOf(string);
-		for(int i = 0 ; i < repeat; i++) {
-			var len = str.length();
-			if(textLength() + len > maxTextLength) {
-				len = maxTextLength - textLength();
-				str = str.substring(0, len);
-				buffer.append(str);
-				break;
-			}
-			else
-				buffer.append(str);
+		var len = (int)Math.min((long)str.length() * Math.max(0, repeat), maxTextLength - textLength());
+		if(len <= 0)
+			return this;
+		if(len <= str.length()) {
+			buffer.append(len == str.length() ? str : str.substring(0, len));
+		}
+		else {
+			var arr = fill(len);
+			str.getChars(0, str.length(), arr, 0);
+			repeatFill(arr, str.length(), len);
+			appendFill(len);
 		}
-
-		
 		return this;
 	}
 	
@@ -575,13 +708,7 @@ public abstract class Sequence {
 
 	public final Sequence msg(int repeat, String pattern, Object... args) {
 		if(args.length > 0) {
-			var p = Pattern.compile("(\\{[0-9]+(?:,?.*)\\})");
-			var m = p.matcher(pattern);
-			if(m.find()) {
-				pattern = m.replaceAll((r) -> newSeq().boldOn().str(r.group(0)).boldOff().toString());
-			}
-			var fPattern = pattern;
-			rawStr(repeat, MessageFormat.format(fPattern, args));
+			rawStr(repeat, TemplateCache.get().messageFormat(this, pattern).format(args));
 		}
 		else {
 			str(repeat, pattern);
@@ -595,13 +722,7 @@ public abstract class Sequence {
 
 	public final Sequence fmt(int repeat, String pattern, Object... args) {
 		if(args.length > 0) {
-			var p = Pattern.compile("(\\%[0-9\\-\\.]*[a-z]+)");
-			var m = p.matcher(pattern);
-			if(m.find()) {
-				pattern = m.replaceAll((r) -> newSeq().boldOn().str(r.group(0)).boldOff().toString());
-			}
-			var fPattern = pattern;
-			rawStr(repeat, String.format(fPattern, args));
+			rawStr(repeat, TemplateCache.get().format(this, pattern).format(args));
 		}
 		else {
 			str(repeat, pattern);
@@ -668,6 +789,54 @@ public abstract class Sequence {
 	public String toString() {
 		return buffer == null ? "" : buffer.toAnsi();
 	}
+
+	/**
+	 * Write this sequence as ANSI to a channel, encoding straight to bytes
+	 * rather than going through {@link #toString()}.
+	 *
+	 * @param channel channel
+	 * @throws IOException on error
+	 */
+	public final void writeTo(WritableByteChannel channel) throws IOException {
+		var bytes = encode();
+		while (bytes.hasRemaining())
+			channel.write(bytes);
+	}
+
+	/**
+	 * Write this sequence as ANSI to a stream, encoding straight to bytes
+	 * rather than going through {@link #toString()}.
+	 *
+	 * @param out stream
+	 * @throws IOException on error
+	 */
+	public final void writeTo(OutputStream out) throws IOException {
+		var bytes = encode();
+		out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+	}
+
+	/**
+	 * The terminal this sequence is written to, if it is encoded for one, so
+	 * that {@link #writeTo(WritableByteChannel)} produces what
+	 * {@link #toString()} does.
+	 *
+	 * @return terminal or {@code null}
+	 */
+	protected Terminal terminal() {
+		return null;
+	}
+
+	private ByteBuffer encode() {
+		if (buffer == null)
+			return ByteBuffer.allocate(0);
+		if (encoder == null)
+			encoder = new AnsiEncoder();
+		return encoder.encode(buffer, terminal());
+	}
+
+	public AttributedString toAttributedString() {
+		return buffer == null ? AttributedString.EMPTY : buffer.toAttributedString();
+	}
 	
 	public Sequence size(long bytes) {
 		var size = bytes;
@@ -700,6 +869,14 @@ public abstract class Sequence {
 		return this;
 	}
 
+	public Sequence duration(Duration duration) {
+		var secs = duration.getSeconds();
+		if (secs >= 3600)
+			return str(String.format("%d:%02d:%02d", secs / 3600, (secs % 3600) / 60, secs % 60));
+		else
+			return str(String.format("%d:%02d", secs / 60, secs % 60));
+	}
+
 	public static String repeat(String s, int times) {
 		StringBuilder bui = new StringBuilder();
 		for (int i = 0; i < times; i++) {
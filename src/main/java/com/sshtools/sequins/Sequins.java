@@ -4,20 +4,46 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import org.jline.terminal.Terminal;
 
 import com.sshtools.sequins.Bitmap.ImageDisplayMethod;
+import com.sshtools.sequins.Bitmap.ImageSourceFormat;
 import com.sshtools.sequins.impl.JLineSequins;
 
 public interface Sequins extends Prompter, DrawContext, Closeable {
 	
 	Optional<ImageDisplayMethod> imageDisplayMethod();
 
+	/**
+	 * Get what the terminal has said about its capabilities. The first call
+	 * starts asking the terminal in the background.
+	 *
+	 * @return future capabilities
+	 */
+	CompletableFuture<Capabilities> capabilities();
+
 	static Sequins create() {
+		return create(false);
+	}
+
+	/**
+	 * Create a terminal, optionally starting to ask it about its capabilities
+	 * straight away, in the background, so they are likely to be known by the
+	 * time they are needed.
+	 *
+	 * @param probeCapabilities start asking about capabilities
+	 * @return terminal
+	 */
+	static Sequins create(boolean probeCapabilities) {
 		try {
-			return new JLineSequins();
+			var sequins = new JLineSequins();
+			if (probeCapabilities)
+				sequins.capabilities();
+			return sequins;
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
@@ -79,8 +105,27 @@ public interface Sequins extends Prompter, DrawContext, Closeable {
 
 	PrintWriter getErrorWriter();
 
+	Sequins withFrameRate(int framesPerSecond);
+
+	void flush();
+
 	Sequence createSequence();
 
+	/**
+	 * Get a sequence for short term use, such as building some output and
+	 * immediately writing it. It may be a reset sequence reused from a small
+	 * per-thread pool, so must be given back with
+	 * {@link #releaseSequence(Sequence)} and not used after that.
+	 * 
+	 * @return sequence
+	 */
+	default Sequence borrowSequence() {
+		return createSequence();
+	}
+
+	default void releaseSequence(Sequence sequence) {
+	}
+
 	ProgressBuilder progressBuilder();
 	
 	void cursorVisible(boolean visible);
@@ -102,20 +147,28 @@ public interface Sequins extends Prompter, DrawContext, Closeable {
 	}
 	
 	default Sequins message(String message, Object... args) {
-		var seq = createSequence();
-		seq.msg(message, args);
-		var wrt = getWriter();
-		wrt.print(seq);
-		wrt.flush();
+		var seq = borrowSequence();
+		try {
+			seq.msg(message, args);
+			var wrt = getWriter();
+			wrt.print(seq);
+			wrt.flush();
+		} finally {
+			releaseSequence(seq);
+		}
 		return this;
 	}
 	
 	default Sequins messageln(String message, Object... args) {
-		var seq = createSequence();
-		seq.msg(message, args);
-		var wrt = getWriter();
-		wrt.println(seq);
-		wrt.flush();
+		var seq = borrowSequence();
+		try {
+			seq.msg(message, args);
+			var wrt = getWriter();
+			wrt.println(seq);
+			wrt.flush();
+		} finally {
+			releaseSequence(seq);
+		}
 		return this;
 	}
 
@@ -132,29 +185,44 @@ public interface Sequins extends Prompter, DrawContext, Closeable {
 			errorln(message, args);
 		}
 		if(exception != null) {
-			var seq = createSequence();
-			seq.exception(exception, showTrace);
-			var wrt = getErrorWriter();
-			wrt.print(seq.toString());
-			wrt.flush();
+			var seq = borrowSequence();
+			try {
+				seq.exception(exception, showTrace);
+				flush();
+				var wrt = getErrorWriter();
+				wrt.print(seq.toString());
+				wrt.flush();
+			} finally {
+				releaseSequence(seq);
+			}
 		}
 		return this;
 	}
 	
 	default Sequins error(String message, Object... args) {
-		var seq = createSequence();
-		seq.msg(message, args);
-		var wrt = getErrorWriter();
-		wrt.print(seq);
-		wrt.flush();
+		var seq = borrowSequence();
+		try {
+			seq.msg(message, args);
+			flush();
+			var wrt = getErrorWriter();
+			wrt.print(seq);
+			wrt.flush();
+		} finally {
+			releaseSequence(seq);
+		}
 		return this;
 	}
 	
 	default Sequins errorln(String message, Object... args) {
-		var seq = createSequence();
-		seq.msg(message, args);
-		var wrt = getErrorWriter();
-		wrt.println(seq);
+		var seq = borrowSequence();
+		try {
+			seq.msg(message, args);
+			flush();
+			var wrt = getErrorWriter();
+			wrt.println(seq);
+		} finally {
+			releaseSequence(seq);
+		}
 		return this;
 	}
 
@@ -163,6 +231,10 @@ public interface Sequins extends Prompter, DrawContext, Closeable {
 	}
 	
 	BitmapBuilder createBitmap();
+
+	default AnimatedBitmap createAnimatedBitmap(ByteBuffer pixels, int width, int height, ImageSourceFormat format) {
+		return createBitmap().buildAnimated(pixels, width, height, format);
+	}
 	
 	Sequins viewport(int height);
 	
@@ -0,0 +1,106 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins;
+
+import java.text.MessageFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded LRU cache of the patterns given to {@link Sequence#msg(String, Object...)}
+ * and {@link Sequence#fmt(String, Object...)}, with their arguments already
+ * highlighted and, for {@link MessageFormat} patterns, already parsed.
+ * <p>
+ * The highlighting depends on the {@link Sequence#newSeq()} of the terminal
+ * the sequence was created for, so entries are keyed on the class of
+ * sequence as well as the pattern.
+ */
+final class TemplateCache {
+
+	final static class Template {
+		private final String highlighted;
+		private final MessageFormat format;
+
+		private Template(String highlighted, MessageFormat format) {
+			this.highlighted = highlighted;
+			this.format = format;
+		}
+
+		String format(Object... args) {
+			if (format == null)
+				return String.format(highlighted, args);
+			synchronized (format) {
+				return format.format(args);
+			}
+		}
+	}
+
+	private record Key(Class<?> type, boolean messageFormat, String pattern) {
+	}
+
+	private final static Pattern MESSAGE_FORMAT_ARGS = Pattern.compile("(\\{[0-9]+(?:,?.*)\\})");
+	private final static Pattern FORMAT_ARGS = Pattern.compile("(\\%[0-9\\-\\.]*[a-z]+)");
+	private final static int MAX_TEMPLATES = 256;
+	private final static TemplateCache DEFAULT = new TemplateCache(MAX_TEMPLATES);
+
+	static TemplateCache get() {
+		return DEFAULT;
+	}
+
+	private final Map<Key, Template> templates;
+
+	TemplateCache(int maxTemplates) {
+		templates = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Template> eldest) {
+				return size() > maxTemplates;
+			}
+		};
+	}
+
+	Template messageFormat(Sequence seq, String pattern) {
+		return template(seq, true, pattern);
+	}
+
+	Template format(Sequence seq, String pattern) {
+		return template(seq, false, pattern);
+	}
+
+	private Template template(Sequence seq, boolean messageFormat, String pattern) {
+		var key = new Key(seq.getClass(), messageFormat, pattern);
+		synchronized (templates) {
+			var template = templates.get(key);
+			if (template != null)
+				return template;
+		}
+		var template = create(seq, messageFormat, pattern);
+		synchronized (templates) {
+			templates.put(key, template);
+		}
+		return template;
+	}
+
+	private static Template create(Sequence seq, boolean messageFormat, String pattern) {
+		var m = (messageFormat ? MESSAGE_FORMAT_ARGS : FORMAT_ARGS).matcher(pattern);
+		if (m.find()) {
+			pattern = m.replaceAll((r) -> seq.newSeq().boldOn().str(r.group(0)).boldOff().toString());
+		}
+		return new Template(pattern, messageFormat ? new MessageFormat(pattern) : null);
+	}
+}
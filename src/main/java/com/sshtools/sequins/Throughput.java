@@ -0,0 +1,93 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculates the rate of a transfer from samples of the number of bytes done.
+ * Both the instantaneous rate (between the last two samples), and a rate
+ * smoothed with an exponentially weighted moving average are available, the
+ * latter being used to estimate the time remaining.
+ */
+public final class Throughput {
+
+	private final double timeConstant;
+
+	private boolean sampled;
+	private long lastDone;
+	private long lastTime;
+	private double rate;
+	private double smoothed;
+
+	public Throughput() {
+		this(Duration.ofSeconds(3));
+	}
+
+	public Throughput(Duration timeConstant) {
+		this.timeConstant = timeConstant.toNanos();
+	}
+
+	public void reset() {
+		sampled = false;
+		rate = smoothed = 0;
+	}
+
+	public void sample(long done) {
+		sample(done, System.nanoTime());
+	}
+
+	public void sample(long done, long nanos) {
+		if (!sampled || done < lastDone) {
+			sampled = true;
+			lastDone = done;
+			lastTime = nanos;
+			return;
+		}
+		var elapsed = nanos - lastTime;
+		if (elapsed <= 0)
+			return;
+		rate = (double) (done - lastDone) * TimeUnit.SECONDS.toNanos(1) / elapsed;
+		if (smoothed == 0)
+			smoothed = rate;
+		else
+			smoothed += (1d - Math.exp(-elapsed / timeConstant)) * (rate - smoothed);
+		lastDone = done;
+		lastTime = nanos;
+	}
+
+	/**
+	 * Rate in bytes per second between the last two samples.
+	 */
+	public long rate() {
+		return (long) rate;
+	}
+
+	/**
+	 * Smoothed rate in bytes per second.
+	 */
+	public long smoothedRate() {
+		return (long) smoothed;
+	}
+
+	public Optional<Duration> eta(long total) {
+		if (smoothed < 1 || total < lastDone)
+			return Optional.empty();
+		return Optional.of(Duration.ofSeconds((long) Math.ceil((total - lastDone) / smoothed)));
+	}
+}
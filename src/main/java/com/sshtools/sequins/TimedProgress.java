@@ -56,6 +56,16 @@ public class TimedProgress implements Progress {
 		return delegate.newJob(name, args);
 	}
 
+	@Override
+	public void progressed(int percent) {
+		delegate.progressed(percent);
+	}
+
+	@Override
+	public void progressed(long done, long total) {
+		delegate.progressed(done, total);
+	}
+
 	@Override
 	public void progressed(Optional<Integer> percent, Optional<String> message, Object... args) {
 		delegate.progressed(percent, message, args);
@@ -0,0 +1,121 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins;
+
+import java.lang.System.Logger.Level;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A process wide hashed timer wheel, serviced by a single daemon thread that
+ * parks while nothing is scheduled. Tasks are themselves the wheel entries, so
+ * scheduling allocates nothing but a queue node.
+ */
+final class TimerWheel {
+
+	abstract static class Task {
+		private long deadline;
+
+		abstract void fire();
+	}
+
+	private final static System.Logger LOG = System.getLogger(TimerWheel.class.getName());
+	private final static TimerWheel SHARED = new TimerWheel("SequinsTimerWheel", TimeUnit.MILLISECONDS.toNanos(10), 512);
+
+	private final String name;
+	private final long tick;
+	private final ArrayDeque<Task>[] buckets;
+	private final Queue<Task> incoming = new ConcurrentLinkedQueue<>();
+
+	private Thread thread;
+	private volatile boolean idle;
+	private int scheduled;
+	private long cursor;
+
+	@SuppressWarnings("unchecked")
+	TimerWheel(String name, long tick, int size) {
+		this.name = name;
+		this.tick = tick;
+		this.buckets = (ArrayDeque<Task>[]) new ArrayDeque<?>[size];
+		for (int i = 0; i < size; i++)
+			buckets[i] = new ArrayDeque<>();
+	}
+
+	static TimerWheel shared() {
+		return SHARED;
+	}
+
+	void schedule(Task task, long delay, TimeUnit unit) {
+		task.deadline = System.nanoTime() + unit.toNanos(delay);
+		incoming.offer(task);
+		if (idle || thread == null)
+			wake();
+	}
+
+	private synchronized void wake() {
+		if (thread == null) {
+			thread = new Thread(this::run, name);
+			thread.setDaemon(true);
+			thread.start();
+		} else
+			LockSupport.unpark(thread);
+	}
+
+	private void run() {
+		cursor = Math.floorDiv(System.nanoTime(), tick);
+		while (true) {
+			Task task;
+			while ((task = incoming.poll()) != null) {
+				var at = Math.max(Math.floorDiv(task.deadline, tick), cursor);
+				buckets[Math.floorMod(at, buckets.length)].add(task);
+				scheduled++;
+			}
+
+			if (scheduled == 0) {
+				idle = true;
+				if (incoming.isEmpty())
+					LockSupport.park(this);
+				idle = false;
+				cursor = Math.floorDiv(System.nanoTime(), tick);
+				continue;
+			}
+
+			var now = System.nanoTime();
+			while (cursor <= Math.floorDiv(now, tick)) {
+				var bucket = buckets[Math.floorMod(cursor, buckets.length)];
+				for (int i = bucket.size(); i > 0; i--) {
+					var t = bucket.poll();
+					if (Math.floorDiv(t.deadline, tick) <= cursor) {
+						scheduled--;
+						try {
+							t.fire();
+						} catch (RuntimeException re) {
+							LOG.log(Level.WARNING, "Timer task failed.", re);
+						}
+					} else {
+						bucket.add(t);
+					}
+				}
+				cursor++;
+			}
+
+			LockSupport.parkNanos(this, cursor * tick - System.nanoTime());
+		}
+	}
+}
@@ -15,6 +15,8 @@
  */
 package com.sshtools.sequins.impl;
 
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -28,7 +30,16 @@ import com.sshtools.sequins.Sequins;
 
 public abstract class AbstractTerminal implements Sequins {
 
-	private final List<DumbConsoleProgress> consoleProgress = Collections.synchronizedList(new ArrayList<>());
+	private final static int MAX_POOLED_SEQUENCES = 4;
+	private final static int MAX_POOLED_LENGTH = 16384;
+
+	private final List<TerminalProgress> consoleProgress = Collections.synchronizedList(new ArrayList<>());
+	private final FrameScheduler frameScheduler = new FrameScheduler("SequinsFrameScheduler");
+	private final Object frameLock = new Object();
+	private final ThreadLocal<ArrayDeque<Sequence>> sequencePool = ThreadLocal.withInitial(ArrayDeque::new);
+
+	private FrameWriter frameWriter;
+	private volatile PrintWriter framedWriter;
 
 	public AbstractTerminal() {
 	}
@@ -60,13 +71,67 @@ public abstract class AbstractTerminal implements Sequins {
 		};
 	}
 
+	@Override
+	public final Sequence borrowSequence() {
+		var seq = sequencePool.get().poll();
+		return seq == null ? createSequence() : seq;
+	}
+
+	@Override
+	public final void releaseSequence(Sequence sequence) {
+		/* Don't hold on to large buffers, such as those used for images */
+		if (sequence.readOnly() || sequence.textLength() > MAX_POOLED_LENGTH)
+			return;
+		var pool = sequencePool.get();
+		if (pool.size() < MAX_POOLED_SEQUENCES)
+			pool.push(sequence.reset());
+	}
+
+	@Override
+	public Sequins withFrameRate(int framesPerSecond) {
+		synchronized (frameLock) {
+			if (frameWriter != null) {
+				frameScheduler.remove(frameWriter);
+				frameWriter.flushNow();
+				frameWriter = null;
+				framedWriter = null;
+			}
+			if (framesPerSecond > 0) {
+				frameWriter = new FrameWriter(nativeWriter(), frameScheduler, framesPerSecond);
+				frameScheduler.add(frameWriter);
+				framedWriter = new PrintWriter(frameWriter);
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public final PrintWriter getWriter() {
+		var wrt = framedWriter;
+		return wrt == null ? nativeWriter() : wrt;
+	}
+
+	@Override
+	public void flush() {
+		synchronized (frameLock) {
+			if (frameWriter == null)
+				nativeWriter().flush();
+			else {
+				frameWriter.flushNow();
+				/* Reports any frame that failed to write through checkError() */
+				framedWriter.flush();
+			}
+		}
+	}
+
 	protected <T> T interruptSpinner(Callable<T> task) {
-		var runningSpinners = new ArrayList<DumbConsoleProgress>();
+		var runningSpinners = new ArrayList<TerminalProgress>();
 		synchronized (consoleProgress) {
 			consoleProgress.forEach(p -> {
 				p.interrupt(runningSpinners);
 			});
 		}
+		flush();
 		try {
 			try {
 				return task.call();
@@ -77,11 +142,15 @@ public abstract class AbstractTerminal implements Sequins {
 			}
 		} finally {
 			synchronized (consoleProgress) {
-				runningSpinners.forEach(p -> p.startSpinner(true));
+				runningSpinners.forEach(p -> p.resume());
 			}
 		}
 	}
 
+	public final FrameScheduler frameScheduler() {
+		return frameScheduler;
+	}
+
 	@Override
 	public final ProgressBuilder progressBuilder() {
 		return new ProgressBuilder() {
@@ -95,5 +164,7 @@ public abstract class AbstractTerminal implements Sequins {
 		};
 	}
 
-	protected abstract DumbConsoleProgress createProgress(ProgressBuilder builder);
+	protected abstract TerminalProgress createProgress(ProgressBuilder builder);
+
+	protected abstract PrintWriter nativeWriter();
 }
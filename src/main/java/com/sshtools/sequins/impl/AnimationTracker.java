@@ -0,0 +1,123 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracks the areas of an animated bitmap that have changed since they were
+ * last sent, and when the next frame may be sent.
+ * <p>
+ * Frames are paced by the rate the terminal accepts output at, measured only
+ * over the time spent writing frames and smoothed over recent frames. After
+ * sending a frame, the next is not sent until the time it would take to write
+ * that frame again has passed.
+ */
+final class AnimationTracker {
+
+	record Area(int x, int y, int width, int height) {
+	}
+
+	/**
+	 * Beyond this many areas they are merged into one that bounds them all.
+	 */
+	final static int MAX_AREAS = 16;
+
+	/**
+	 * How much of the bytes and time of earlier frames is forgotten with each
+	 * new frame.
+	 */
+	private final static double DECAY = 0.25;
+
+	private final int width;
+	private final int height;
+	private final List<Area> areas = new ArrayList<>();
+	private double bytes;
+	private double nanos;
+	private long next;
+
+	AnimationTracker(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	synchronized void changed(int x, int y, int width, int height) {
+		var x1 = Math.max(0, x);
+		var y1 = Math.max(0, y);
+		var x2 = Math.min(this.width, x + width);
+		var y2 = Math.min(this.height, y + height);
+		if (x2 <= x1 || y2 <= y1)
+			return;
+		areas.add(new Area(x1, y1, x2 - x1, y2 - y1));
+		if (areas.size() > MAX_AREAS) {
+			var bounds = bounds();
+			areas.clear();
+			areas.add(bounds);
+		}
+	}
+
+	synchronized void changed() {
+		areas.clear();
+		areas.add(new Area(0, 0, width, height));
+	}
+
+	synchronized void clear() {
+		areas.clear();
+	}
+
+	/**
+	 * Take the changed areas if there are any and a frame is due.
+	 *
+	 * @return areas, empty if nothing is to be sent
+	 */
+	synchronized List<Area> take() {
+		if (areas.isEmpty() || System.nanoTime() < next)
+			return List.of();
+		var taken = List.copyOf(areas);
+		areas.clear();
+		return taken;
+	}
+
+	/**
+	 * Get the smallest area that contains all changed areas.
+	 *
+	 * @return bounds
+	 */
+	synchronized Area bounds() {
+		int x1 = width, y1 = height, x2 = 0, y2 = 0;
+		for (var a : areas) {
+			x1 = Math.min(x1, a.x());
+			y1 = Math.min(y1, a.y());
+			x2 = Math.max(x2, a.x() + a.width());
+			y2 = Math.max(y2, a.y() + a.height());
+		}
+		return new Area(x1, y1, Math.max(0, x2 - x1), Math.max(0, y2 - y1));
+	}
+
+	/**
+	 * Record a frame having been written, and so when the next is due.
+	 *
+	 * @param bytes   size of frame
+	 * @param started {@link System#nanoTime()} when writing started
+	 */
+	synchronized void sent(long bytes, long started) {
+		var now = System.nanoTime();
+		this.bytes = this.bytes * (1 - DECAY) + bytes;
+		this.nanos = this.nanos * (1 - DECAY) + Math.max(1, now - started);
+		next = now + (long) (bytes * this.nanos / this.bytes);
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins.impl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Remembers what was found out about a terminal by asking it, such as its
+ * image protocol and cell size, across runs. This saves short lived programs
+ * from waiting on a round trip to the terminal every time they start.
+ * <p>
+ * Values are kept in a properties file in the user's cache directory, under a
+ * key made from the terminal type, the terminal program and its version, and
+ * the SSH connection, and expire after a day. Setting the system property
+ * {@code sequins.capabilityCache} to {@code false} turns the cache off.
+ * <p>
+ * Only the results of a probe that the terminal fully answered may be put
+ * here. A probe that timed out says nothing about the terminal, and
+ * remembering it would stop it being asked again until the values expire.
+ */
+final class CapabilityCache {
+
+	final static Duration TTL = Duration.ofDays(1);
+
+	private final static CapabilityCache DEFAULT = new CapabilityCache(
+			Boolean.parseBoolean(System.getProperty("sequins.capabilityCache", "true")) ? Optional.of(defaultFile())
+					: Optional.empty(),
+			terminalKey(), TTL);
+
+	static CapabilityCache get() {
+		return DEFAULT;
+	}
+
+	private final Optional<Path> file;
+	private final String key;
+	private final Duration ttl;
+	private Properties properties;
+
+	CapabilityCache(Optional<Path> file, String key, Duration ttl) {
+		this.file = file;
+		this.key = key;
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Get a value remembered for this terminal, if it has not expired.
+	 *
+	 * @param name name
+	 * @return value
+	 */
+	synchronized Optional<String> get(String name) {
+		if (file.isEmpty())
+			return Optional.empty();
+		if (properties == null)
+			properties = load();
+		return value(properties, key + "." + name);
+	}
+
+	/**
+	 * Remember a value for this terminal.
+	 *
+	 * @param name  name
+	 * @param value value
+	 */
+	void put(String name, String value) {
+		put(Map.of(name, value));
+	}
+
+	/**
+	 * Remember several values for this terminal. They are written together, so
+	 * either all of them are remembered or none are.
+	 *
+	 * @param values values keyed by name
+	 */
+	synchronized void put(Map<String, String> values) {
+		if (file.isEmpty())
+			return;
+		/* Another process may have written since this one read */
+		properties = load();
+		var now = System.currentTimeMillis();
+		values.forEach((name, value) -> properties.setProperty(key + "." + name, now + ":" + value));
+		properties.stringPropertyNames().forEach(k -> {
+			if (value(properties, k).isEmpty())
+				properties.remove(k);
+		});
+		try {
+			var path = file.get();
+			Files.createDirectories(path.getParent());
+			var tmp = Files.createTempFile(path.getParent(), "capabilities", ".tmp");
+			try {
+				try (var out = Files.newOutputStream(tmp)) {
+					properties.store(out, "Sequins terminal capabilities");
+				}
+				Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		} catch (IOException | RuntimeException e) {
+			/* Just probe again next time */
+		}
+	}
+
+	private Optional<String> value(Properties properties, String name) {
+		var val = properties.getProperty(name);
+		if (val != null) {
+			var idx = val.indexOf(':');
+			if (idx != -1) {
+				try {
+					var time = Long.parseLong(val.substring(0, idx));
+					if (System.currentTimeMillis() - time < ttl.toMillis())
+						return Optional.of(val.substring(idx + 1));
+				} catch (NumberFormatException nfe) {
+				}
+			}
+		}
+		return Optional.empty();
+	}
+
+	private Properties load() {
+		var props = new Properties();
+		var path = file.get();
+		if (Files.exists(path)) {
+			try (var in = Files.newInputStream(path)) {
+				props.load(in);
+			} catch (IOException | RuntimeException e) {
+			}
+		}
+		return props;
+	}
+
+	private static Path defaultFile() {
+		var cache = System.getenv("XDG_CACHE_HOME");
+		var dir = cache == null || cache.isBlank() ? Path.of(System.getProperty("user.home"), ".cache") : Path.of(cache);
+		return dir.resolve("sequins").resolve("capabilities.properties");
+	}
+
+	private static String terminalKey() {
+		var ident = String.join("\n", env("TERM"), env("TERM_PROGRAM"), env("TERM_PROGRAM_VERSION"),
+				env("SSH_CONNECTION"));
+		try {
+			var digest = MessageDigest.getInstance("SHA-256").digest(ident.getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest, 0, 16);
+		} catch (NoSuchAlgorithmException e) {
+			return Integer.toHexString(ident.hashCode());
+		}
+	}
+
+	private static String env(String name) {
+		var val = System.getenv(name);
+		return val == null ? "" : val;
+	}
+}
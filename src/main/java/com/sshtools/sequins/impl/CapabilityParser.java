@@ -0,0 +1,193 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins.impl;
+
+import java.util.Optional;
+
+import com.sshtools.sequins.Bitmap.ImageDisplayMethod;
+import com.sshtools.sequins.Capabilities;
+
+/**
+ * Parses the replies to the capability queries as they arrive, in whatever
+ * pieces the terminal's input is read in. Anything that is not a reply, such
+ * as keys typed meanwhile, is skipped.
+ * <p>
+ * Primary device attributes ({@code CSI c}) must be asked for last. Every
+ * terminal answers it, and terminals answer in order, so once its reply has
+ * arrived no other replies are coming.
+ */
+final class CapabilityParser {
+
+	private final StringBuilder pending = new StringBuilder();
+	private boolean done;
+	private boolean kitty;
+	private boolean sixel;
+	private boolean trueColor;
+	private Optional<String> version = Optional.empty();
+	private int cellWidth;
+	private int cellHeight;
+	private int areaWidth;
+	private int areaHeight;
+
+	/**
+	 * Parse more of the terminal's input.
+	 *
+	 * @param buf input
+	 * @param off offset
+	 * @param len length
+	 * @return whether all replies have now arrived
+	 */
+	boolean feed(char[] buf, int off, int len) {
+		pending.append(buf, off, len);
+		var i = 0;
+		while (!done) {
+			var esc = pending.indexOf("\033", i);
+			if (esc == -1) {
+				i = pending.length();
+				break;
+			}
+			if (esc + 1 == pending.length()) {
+				i = esc;
+				break;
+			}
+			int end;
+			switch (pending.charAt(esc + 1)) {
+			case '[':
+				end = controlSequence(esc + 2);
+				break;
+			case 'P':
+			case '_':
+				end = controlString(pending.charAt(esc + 1), esc + 2);
+				break;
+			default:
+				end = esc + 1;
+				break;
+			}
+			if (end == -1) {
+				/* Incomplete, wait for the rest */
+				i = esc;
+				break;
+			}
+			i = end;
+		}
+		pending.delete(0, i);
+		return done;
+	}
+
+	boolean done() {
+		return done;
+	}
+
+	/**
+	 * Get what was found out.
+	 *
+	 * @param columns   width of terminal in columns
+	 * @param rows      height of terminal in rows
+	 * @param trueColor whether 24 bit colour is known to be supported without
+	 *                  asking
+	 * @return capabilities
+	 */
+	Capabilities capabilities(int columns, int rows, boolean trueColor) {
+		Optional<Integer> width = Optional.empty();
+		Optional<Integer> height = Optional.empty();
+		if (cellWidth > 0 && cellHeight > 0) {
+			width = Optional.of(cellWidth);
+			height = Optional.of(cellHeight);
+		} else if (areaWidth > 0 && areaHeight > 0 && columns > 0 && rows > 0) {
+			width = Optional.of(areaWidth / columns);
+			height = Optional.of(areaHeight / rows);
+		}
+		return new Capabilities(
+				kitty ? Optional.of(ImageDisplayMethod.KITTY)
+						: (sixel ? Optional.of(ImageDisplayMethod.SIXEL) : Optional.empty()),
+				version, width, height, trueColor || this.trueColor);
+	}
+
+	private int controlSequence(int start) {
+		var p = start;
+		while (p < pending.length()) {
+			var ch = pending.charAt(p);
+			if (ch >= 0x40 && ch <= 0x7e)
+				break;
+			p++;
+		}
+		if (p == pending.length())
+			return -1;
+
+		var params = pending.substring(start, p);
+		switch (pending.charAt(p)) {
+		case 'c':
+			if (params.startsWith("?")) {
+				for (var attr : params.substring(1).split(";")) {
+					if (attr.equals("4"))
+						sixel = true;
+				}
+				done = true;
+			}
+			break;
+		case 't':
+			var report = params.split(";");
+			if (report.length == 3) {
+				try {
+					var height = Integer.parseInt(report[1]);
+					var width = Integer.parseInt(report[2]);
+					if (report[0].equals("6")) {
+						cellWidth = width;
+						cellHeight = height;
+					} else if (report[0].equals("4")) {
+						areaWidth = width;
+						areaHeight = height;
+					}
+				} catch (NumberFormatException nfe) {
+				}
+			}
+			break;
+		default:
+			break;
+		}
+		return p + 1;
+	}
+
+	private int controlString(char type, int start) {
+		for (var p = start; p < pending.length(); p++) {
+			var ch = pending.charAt(p);
+			if (ch == 7) {
+				reply(type, pending.substring(start, p));
+				return p + 1;
+			} else if (ch == 27) {
+				if (p + 1 == pending.length())
+					return -1;
+				if (pending.charAt(p + 1) == '\\') {
+					reply(type, pending.substring(start, p));
+					return p + 2;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private void reply(char type, String body) {
+		if (type == '_') {
+			if (body.startsWith("G"))
+				kitty = true;
+		} else if (body.startsWith(">|")) {
+			version = Optional.of(body.substring(2));
+		} else if (body.startsWith("1+r")) {
+			/* Only the true colour capabilities are asked for */
+			trueColor = true;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins.impl;
+
+import java.nio.ByteBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * Shrinks RGB and RGBA images by averaging the area of source pixels that
+ * each destination pixel covers. Rows are scaled in parallel.
+ */
+final class Downscaler {
+
+	private Downscaler() {
+	}
+
+	/**
+	 * Scale an image down. The source is read from its position without
+	 * changing it, and may be read by other threads at the same time.
+	 *
+	 * @param src       source pixels
+	 * @param srcWidth  source width
+	 * @param srcHeight source height
+	 * @param bpp       bytes per pixel
+	 * @param width     width, no more than source width
+	 * @param height    height, no more than source height
+	 * @return scaled pixels
+	 */
+	static ByteBuffer areaAverage(ByteBuffer src, int srcWidth, int srcHeight, int bpp, int width, int height) {
+		var dst = ByteBuffer.allocate(width * height * bpp);
+		var base = src.position();
+		var srcStride = srcWidth * bpp;
+		var xs = new int[width + 1];
+		for (var x = 0; x <= width; x++)
+			xs[x] = (int) ((long) x * srcWidth / width);
+
+		IntStream.range(0, height).parallel().forEach(y -> {
+			var y0 = (int) ((long) y * srcHeight / height);
+			var y1 = Math.max(y0 + 1, (int) ((long) (y + 1) * srcHeight / height));
+			var sums = new long[width * bpp];
+			var row = new byte[srcStride];
+			for (var sy = y0; sy < y1; sy++) {
+				src.get(base + sy * srcStride, row, 0, srcStride);
+				for (var x = 0; x < width; x++) {
+					var x1 = Math.max(xs[x] + 1, xs[x + 1]);
+					var s = x * bpp;
+					for (var sx = xs[x]; sx < x1; sx++) {
+						var p = sx * bpp;
+						for (var c = 0; c < bpp; c++)
+							sums[s + c] += row[p + c] & 0xff;
+					}
+				}
+			}
+
+			var out = new byte[width * bpp];
+			for (var x = 0; x < width; x++) {
+				var n = (long) (y1 - y0) * (Math.max(xs[x] + 1, xs[x + 1]) - xs[x]);
+				var s = x * bpp;
+				for (var c = 0; c < bpp; c++)
+					out[s + c] = (byte) ((sums[s + c] + n / 2) / n);
+			}
+			dst.put(y * width * bpp, out);
+		});
+		return dst;
+	}
+}
@@ -16,12 +16,18 @@
 package com.sshtools.sequins.impl;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.text.MessageFormat;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jline.utils.InfoCmp.Capability;
 
@@ -29,8 +35,9 @@ import com.sshtools.sequins.Progress;
 import com.sshtools.sequins.Sequence;
 import com.sshtools.sequins.Sequence.Color;
 import com.sshtools.sequins.Sequins;
+import com.sshtools.sequins.Throughput;
 
-public class DumbConsoleProgress implements Progress {
+public class DumbConsoleProgress implements TerminalProgress {
 
 	public class Formattable {
 		Object[] args;
@@ -66,48 +73,115 @@ public class DumbConsoleProgress implements Progress {
 
 	}
 
-	class Spinner extends Thread {
+	/**
+	 * Updates posted by any thread for a whole tree of jobs. They are applied,
+	 * and so written to the terminal, by whichever thread drains the queue while
+	 * holding this object's monitor. This is usually the {@link FrameScheduler},
+	 * but may be a thread that is closing the root or prompting.
+	 */
+	static final class Updates implements FrameScheduler.Node {
+		private final Queue<Object> queue = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		private final FrameScheduler scheduler;
+
+		Updates(FrameScheduler scheduler) {
+			this.scheduler = scheduler;
+		}
 
-		boolean active = true;
-		int index;
-		boolean hadFirstSpin;
-		final boolean delay;
+		void post(Object update) {
+			queue.offer(update);
+			if (scheduled.compareAndSet(false, true))
+				scheduler.wake();
+		}
 
-		Spinner(boolean delay) {
-			super("ProgressSpinner");
-			setDaemon(true);
-			this.delay = delay;
+		@Override
+		public long tick(long now) {
+			scheduled.set(false);
+			if (!queue.isEmpty())
+				drain();
+			return Long.MAX_VALUE;
 		}
 
-		public void run() {
-			try {
-				if(delay)
-					Thread.sleep(spinnerStartDelay.toMillis());
-				while (active) {
-					synchronized (lock) {
-						printJob();
-					}
-					hadFirstSpin = true;
-					index++;
-					if (index == spinnerChars.length)
-						index = 0;
-					Thread.sleep(terminal.terminal().getBooleanCapability(Capability.cursor_address) ? 100 : 1000);
+		void drain() {
+			synchronized (this) {
+				Object update;
+				while ((update = queue.poll()) != null) {
+					if (update instanceof DumbConsoleProgress)
+						((DumbConsoleProgress) update).applyProgress();
+					else
+						((Runnable) update).run();
 				}
-			} catch (InterruptedException ie) {
+			}
+		}
+	}
+
+	class Spinner implements FrameScheduler.Node {
+
+		volatile boolean active;
+		int index;
+		long nextFrame;
+
+		void start(boolean delay) {
+			index = 0;
+			nextFrame = System.nanoTime() + (delay ? spinnerStartDelay.toNanos() : 0);
+			active = true;
+			scheduler.wake();
+		}
+
+		@Override
+		public long tick(long now) {
+			if (!active)
+				return Long.MAX_VALUE;
+			if (now - nextFrame < 0)
+				return nextFrame;
+			synchronized (lock) {
+				if (!active)
+					return Long.MAX_VALUE;
+				printJob();
+				index++;
+				if (index == spinnerChars.length)
+					index = 0;
+				nextFrame = now + interval();
+				return nextFrame;
 			}
 		}
 	}
 
 	static int[] SPINNER_CHARS = new int[] { '.' };
 
+	private final static long SPINNER_FAST_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+	private final static long SPINNER_SLOW_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+	private final static int NO_PERCENT = Integer.MIN_VALUE;
+	private final static VarHandle DIRTY;
+	private final static VarHandle PENDING_MESSAGE;
+
+	static {
+		try {
+			var lookup = MethodHandles.lookup();
+			DIRTY = lookup.findVarHandle(DumbConsoleProgress.class, "dirty", boolean.class);
+			PENDING_MESSAGE = lookup.findVarHandle(DumbConsoleProgress.class, "pendingMessage", Formattable.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
 	private int indent = 0;
 	private Optional<Integer> percent = Optional.empty();
-	private boolean cancelled;
+	private volatile boolean cancelled;
+	private volatile boolean dirty;
+	private volatile int pendingPercent = NO_PERCENT;
+	private volatile Formattable pendingMessage;
+	private volatile long pendingDone = -1;
+	private volatile long pendingTotal;
+	private volatile long nextTransferUpdate;
+	private long transferDone = -1;
+	private long transferTotal;
 	private List<Progress> jobs = new CopyOnWriteArrayList<>();
 	private Optional<Runnable> onClose = Optional.empty();
 
 	protected Duration spinnerStartDelay = Duration.ofSeconds(1);
-	protected Object lock;
+	protected final Object lock;
+	protected final Updates updates;
 	protected Formattable message;
 	protected boolean newlineNeededForNewMessage;
 	protected StringBuilder indentStr = new StringBuilder();
@@ -116,26 +190,31 @@ public class DumbConsoleProgress implements Progress {
 	protected Spinner spinner;
 
 	protected final Sequins terminal;
+	protected final FrameScheduler scheduler;
 	protected final boolean indeterminate;
 	protected final boolean percentageText;
+	protected final boolean transferStats;
+	protected final Throughput throughput;
 	protected final int[] spinnerChars;
 
 	protected final boolean hideCursor;
 	protected final boolean wasCursorVisible;
+	protected final boolean root;
 
-	DumbConsoleProgress(Sequins terminal, boolean showSpinner, boolean hideCursor, Duration spinnerStartDelay, boolean percentageText,
-			String name, int[] spinnerChars, Object... args) {
-		this(terminal, showSpinner, hideCursor, spinnerStartDelay, percentageText, new Object(), 0, name, spinnerChars, args);
+	DumbConsoleProgress(Sequins terminal, FrameScheduler scheduler, boolean showSpinner, boolean hideCursor, Duration spinnerStartDelay, boolean percentageText,
+			boolean transferStats, String name, int[] spinnerChars, Object... args) {
+		this(terminal, scheduler, showSpinner, hideCursor, spinnerStartDelay, percentageText, transferStats, null, 0, name, spinnerChars, args);
 	}
 
-	void setOnClose(Runnable onClose) {
+	@Override
+	public final void setOnClose(Runnable onClose) {
 		this.onClose = Optional.of(onClose);
 	}
 
 	@Override
 	public void cancel() {
 		cancelled = true;
-		Progress.super.cancel();
+		TerminalProgress.super.cancel();
 	}
 
 	@Override
@@ -147,25 +226,48 @@ public class DumbConsoleProgress implements Progress {
 		return message;
 	}
 
-	protected DumbConsoleProgress(Sequins terminal, boolean indeterminate, boolean hideCursor, Duration spinnerStartDelay,
-			boolean percentageText, Object lock, int indent, String name, int[] spinnerChars, Object... args) {
+	/**
+	 * Create a job. When no {@link Updates} is supplied this is a root job, a new
+	 * queue is created and the job is started on it. Child jobs are started by
+	 * their parent.
+	 */
+	protected DumbConsoleProgress(Sequins terminal, FrameScheduler scheduler, boolean indeterminate, boolean hideCursor, Duration spinnerStartDelay,
+			boolean percentageText, boolean transferStats, Updates updates, int indent, String name, int[] spinnerChars, Object... args) {
 		this.wasCursorVisible = terminal.cursorVisible();
 		this.terminal = terminal;
-		this.lock = lock;
+		this.scheduler = scheduler;
+		this.root = updates == null;
+		this.updates = root ? new Updates(scheduler) : updates;
+		this.lock = this.updates;
 		this.hideCursor = hideCursor;
 		this.spinnerChars = spinnerChars;
 		this.indeterminate = indeterminate;
 		this.percentageText = percentageText;
+		this.transferStats = transferStats;
+		this.throughput = transferStats ? new Throughput() : null;
 		this.message = name == null ? null : new Formattable(name, args);
 		this.indent = indent;
-		for (int i = 0; i < indent; i++)
-			indentStr.append("   ");
 
 		if (message == null)
 			firstMessage = false;
-		
-		this.terminal.cursorVisible(!hideCursor);
 
+		if (indeterminate) {
+			spinner = new Spinner();
+			scheduler.add(spinner);
+		}
+
+		if (root) {
+			scheduler.add(this.updates);
+			this.updates.post((Runnable) () -> start(indent));
+		}
+	}
+
+	final void start(int indent) {
+		this.indent = indent;
+		indentStr.setLength(0);
+		for (int i = 0; i < indent; i++)
+			indentStr.append("   ");
+		terminal.cursorVisible(!hideCursor);
 		postConstruct();
 	}
 
@@ -182,24 +284,123 @@ public class DumbConsoleProgress implements Progress {
 		return indent;
 	}
 
+	/**
+	 * Close the job. Any queued updates for the whole tree are applied before
+	 * this returns, so the job's final output has been written. Closing the
+	 * root also stops the spinners of any jobs that were never closed.
+	 */
 	@Override
 	public final void close() throws IOException {
+		updates.post((Runnable) this::closeImpl);
+		updates.drain();
+		if (root) {
+			synchronized (lock) {
+				removeSpinners();
+			}
+			scheduler.remove(updates);
+			onClose.ifPresent(r -> r.run());
+		}
+	}
+
+	private void removeSpinners() {
+		if (spinner != null) {
+			spinner.active = false;
+			scheduler.remove(spinner);
+		}
+		for (var job : jobs)
+			((DumbConsoleProgress) job).removeSpinners();
+	}
+
+	@Override
+	public final void message(Level level, String message, Object... args) {
+		var msg = new Formattable(Optional.of(level), message, args);
+		updates.post((Runnable) () -> messageImpl(msg));
+	}
+
+	@Override
+	public final Progress newJob(String name, Object... args) {
+		var j = createNewJob(updates, name, args);
+		jobs.add(j);
+		updates.post((Runnable) () -> {
+			stopSpinner(new ArrayList<>());
+			if (newlineNeededForNewMessage)
+				printNewline();
+			checkFirstMessage();
+			j.start(indent);
+		});
+		return j;
+	}
+
+	@Override
+	public final void progressed(Optional<Integer> percent, Optional<String> message, Object... args) {
+		pendingPercent = percent.isPresent() ? percent.get() : NO_PERCENT;
+		if (message.isPresent())
+			pendingMessage = new Formattable(Optional.of(Level.NORMAL), message.get(), args);
+		if (DIRTY.compareAndSet(this, false, true))
+			updates.post(this);
+	}
+
+	@Override
+	public final void progressed(int percent) {
+		if (pendingPercent == percent)
+			return;
+		pendingPercent = percent;
+		if (DIRTY.compareAndSet(this, false, true))
+			updates.post(this);
+	}
+
+	@Override
+	public final void progressed(long done, long total) {
+		if (!transferStats) {
+			progressed(Progress.percent(done, total));
+			return;
+		}
+		/* The amount always changes, so redraw at a steady rate (and when done)
+		 * rather than on percentage changes.
+		 */
+		var now = System.nanoTime();
+		pendingTotal = total;
+		pendingDone = done;
+		pendingPercent = Progress.percent(done, total);
+		if (done < total && now - nextTransferUpdate < 0)
+			return;
+		nextTransferUpdate = now + interval();
+		if (DIRTY.compareAndSet(this, false, true))
+			updates.post(this);
+	}
+
+	final void applyProgress() {
+		dirty = false;
+		var done = pendingDone;
+		if (done >= 0) {
+			transferTotal = pendingTotal;
+			if (done != transferDone) {
+				transferDone = done;
+				throughput.sample(done);
+			}
+		}
+		var pc = pendingPercent;
+		var msg = (Formattable) PENDING_MESSAGE.getAndSet(this, null);
+		progressedImpl(pc == NO_PERCENT ? Optional.empty() : Optional.of(pc), msg);
+	}
+
+	private void closeImpl() {
 		stopSpinner(new ArrayList<>());
 		synchronized (lock) {
 			var wasNlNeeded = newlineNeededForNewMessage;
 			if (wasNlNeeded)
 				printNewline();
 		}
-		onClose.ifPresent(r -> r.run());
+		if (spinner != null)
+			scheduler.remove(spinner);
 		terminal.cursorVisible(wasCursorVisible);
 		onClosed();
 	}
 
-	@Override
-	public final void message(Level level, String message, Object... args) {
+	private void messageImpl(Formattable message) {
 		var stopped = stopSpinner(new ArrayList<>());
 		synchronized (lock) {
-			this.message = new Formattable(Optional.of(level), message, args);
+			this.message = message;
 			try {
 				if (newlineNeededForNewMessage)
 					printNewline();
@@ -216,17 +417,6 @@ public class DumbConsoleProgress implements Progress {
 		}
 	}
 
-	@Override
-	public final Progress newJob(String name, Object... args) {
-		stopSpinner(new ArrayList<>());
-		if (newlineNeededForNewMessage)
-			printNewline();
-		checkFirstMessage();
-		var j = createNewJob(lock, name, args);
-		jobs.add(j);
-		return j;
-	}
-
 	protected void startOfLine() {
 		printNewline();
 		startOfLineNeeded = false;
@@ -240,23 +430,21 @@ public class DumbConsoleProgress implements Progress {
 		}
 	}
 
-	@Override
-	public final void progressed(Optional<Integer> percent, Optional<String> message, Object... args) {
+	private void progressedImpl(Optional<Integer> percent, Formattable message) {
 		stopSpinner(new ArrayList<>());
 		synchronized (lock) {
 			if (startOfLineNeeded) {
-				if (message.isPresent() || (percentageText && percent.isPresent())) {
+				if (message != null || (textTail() && percent.isPresent())) {
 					startOfLine();
 				}
 			} else if (newlineNeededForNewMessage) {
 				printNewline();
 			}
 			this.percent = percent;
-			if (message.isPresent()) {
-				this.message = new Formattable(this.message == null ? Optional.of(Level.NORMAL) : this.message.level,
-						message.get(), args);
+			if (message != null) {
+				this.message = message;
 			} else {
-				if (!percentageText && !indeterminate) {
+				if (!textTail() && !indeterminate) {
 					return;
 				}
 			}
@@ -275,10 +463,33 @@ public class DumbConsoleProgress implements Progress {
 
 	protected void printPercentage(Sequence seq) {
 		seq.fmt("%3d%%", percent.get());
+		if (transferDone >= 0) {
+			seq.ch(' ');
+			printTransfer(seq);
+		}
+	}
+
+	protected void printTransfer(Sequence seq) {
+		seq.size(transferDone);
+		if (transferTotal > 0) {
+			seq.str(" / ");
+			seq.size(transferTotal);
+		}
+		var rate = throughput.smoothedRate();
+		if (rate > 0) {
+			seq.str(", ");
+			seq.size(rate);
+			seq.str("/s");
+			var eta = throughput.eta(transferTotal);
+			if (eta.isPresent()) {
+				seq.str(", ");
+				seq.duration(eta.get());
+			}
+		}
 	}
 
 	protected void printSpinner(Sequence seq) {
-		if (spinner != null) {
+		if (spinnerActive()) {
 			seq.msg("{0}", Character.toString(spinnerChars[spinner.index]));
 		}
 	}
@@ -326,47 +537,53 @@ public class DumbConsoleProgress implements Progress {
 		}
 	}
 
-	protected DumbConsoleProgress createNewJob(Object lock, String name, Object... args) {
-		return new DumbConsoleProgress(terminal, indeterminate, hideCursor, spinnerStartDelay, percentageText, lock, indent, name,
+	protected DumbConsoleProgress createNewJob(Updates updates, String name, Object... args) {
+		return new DumbConsoleProgress(terminal, scheduler, indeterminate, hideCursor, spinnerStartDelay, percentageText, transferStats, updates, indent, name,
 				spinnerChars, args);
 	}
 
 	protected void printJob() {
 		synchronized (lock) {
 			var width = terminal.getWidth();
-			Sequence seq = terminal.createSequence();
-
-			if (message == null) {
-				if (percentageText && percent.isPresent()) {
-					seq.ch(' ');
-					printPercentage(seq);
-				} else if (indeterminate) {
-					printSpinner(seq);
-				}
-			} else {
-
-				var tailSeq = terminal.createSequence();
-
-				if (percentageText && percent.isPresent()) {
-					tailSeq.ch(' ');
-					printPercentage(tailSeq);
-				} else if (indeterminate) {
-					tailSeq.ch(' ');
-					printSpinner(tailSeq);
+			var seq = terminal.borrowSequence();
+			try {
+				if (message == null) {
+					if (textTail() && percent.isPresent()) {
+						seq.ch(' ');
+						printPercentage(seq);
+					} else if (indeterminate) {
+						printSpinner(seq);
+					}
+				} else {
+					var tailSeq = terminal.borrowSequence();
+					try {
+						if (textTail() && percent.isPresent()) {
+							tailSeq.ch(' ');
+							printPercentage(tailSeq);
+						} else if (indeterminate) {
+							tailSeq.ch(' ');
+							printSpinner(tailSeq);
+						}
+
+						seq.str(indentStr);
+						if (indent > 0) {
+							printIndent(seq);
+						}
+						printMessage(seq, width - tailSeq.textLength() - seq.textLength());
+						seq.seq(tailSeq);
+					}
+					finally {
+						terminal.releaseSequence(tailSeq);
+					}
 				}
 
-				seq = terminal.createSequence();
-				seq.str(indentStr);
-				if (indent > 0) {
-					printIndent(seq);
-				}
-				printMessage(seq, width - tailSeq.textLength() - seq.textLength());
-				seq.seq(tailSeq);
+				var wrt = terminal.getWriter();
+				wrt.print(seq);
+				wrt.flush();
+			}
+			finally {
+				terminal.releaseSequence(seq);
 			}
-
-			var wrt = terminal.getWriter();
-			wrt.print(seq);
-			wrt.flush();
 		}
 	}
 
@@ -378,17 +595,29 @@ public class DumbConsoleProgress implements Progress {
 
 	final void startSpinner(boolean delay) {
 		synchronized (lock) {
-//			System.out.println("[Start Spinner]");
-			if (spinner == null && indeterminate) {
-				spinner = new Spinner(delay);
-				spinner.start();
+			if (spinner != null && !spinner.active) {
+				spinner.start(delay);
 			}
 		}
 	}
 
+	private boolean textTail() {
+		return percentageText || transferStats;
+	}
+
+	private long interval() {
+		return terminal.terminal().getBooleanCapability(Capability.cursor_address)
+				? SPINNER_FAST_INTERVAL
+				: SPINNER_SLOW_INTERVAL;
+	}
+
+	protected final boolean spinnerActive() {
+		return spinner != null && spinner.active;
+	}
+
 	final boolean isSpinning() {
 		synchronized (lock) {
-			if (spinner != null && spinner.isAlive()) {
+			if (spinnerActive()) {
 				return true;
 			}
 			for (var j : jobs) {
@@ -400,44 +629,36 @@ public class DumbConsoleProgress implements Progress {
 		}
 	}
 
-	final void interrupt(List<DumbConsoleProgress> stopped) {
-
-		if (isSpinning()) {
-			stopSpinner(stopped);
-		}
-		for (var j : jobs) {
-			((DumbConsoleProgress) j).interrupt(stopped);
-		}
-		if (newlineNeededForNewMessage) {
-			printNewline();
+	@Override
+	public final void interrupt(List<TerminalProgress> stopped) {
+		synchronized (lock) {
+			updates.drain();
+			if (isSpinning()) {
+				stopSpinner(stopped);
+			}
+			for (var j : jobs) {
+				((DumbConsoleProgress) j).interrupt(stopped);
+			}
+			if (newlineNeededForNewMessage) {
+				printNewline();
+			}
 		}
 	}
 
-	final boolean stopSpinner(List<DumbConsoleProgress> stopped) {
-//		try {
-//			throw new Exception();
-//		}
-//		catch(Exception e) {
-//			e.printStackTrace(System.out);
-//			System.out.println("[Stop Spinner]");
-//		}
+	@Override
+	public final void resume() {
+		startSpinner(true);
+	}
+
+	final boolean stopSpinner(List<? super DumbConsoleProgress> stopped) {
 		for (var j : jobs) {
 			((DumbConsoleProgress) j).stopSpinner(stopped);
 		}
 		synchronized (lock) {
-			if (spinner != null) {
+			if (spinnerActive()) {
 				spinner.active = false;
-				spinner.interrupt();
-				try {
-					spinner.join();
-				} catch (InterruptedException e) {
-					throw new IllegalStateException("Interrupted.", e);
-				} finally {
-					stopped.add(this);
-					spinner = null;
-				}
-//				if (message != null)
-					printJob();
+				stopped.add(this);
+				printJob();
 				return true;
 			}
 			return false;
@@ -0,0 +1,111 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins.impl;
+
+import java.io.Closeable;
+import java.lang.System.Logger.Level;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives all animated output (spinners etc) for a single terminal from one
+ * daemon thread. Nodes are registered once, and then simply report when they
+ * next want a frame. The thread parks when no node is active. A node that
+ * throws is logged and removed, so it cannot fail on every frame.
+ */
+public final class FrameScheduler implements Closeable {
+
+	public interface Node {
+		/**
+		 * Render a frame if one is due.
+		 *
+		 * @param now current {@link System#nanoTime()}
+		 * @return time the next frame is due, or {@link Long#MAX_VALUE} if idle
+		 */
+		long tick(long now);
+	}
+
+	private final static System.Logger LOG = System.getLogger(FrameScheduler.class.getName());
+
+	private final List<Node> nodes = new CopyOnWriteArrayList<>();
+	private final String name;
+
+	private Thread thread;
+	private volatile boolean closed;
+
+	FrameScheduler(String name) {
+		this.name = name;
+	}
+
+	public void add(Node node) {
+		nodes.add(node);
+	}
+
+	public void remove(Node node) {
+		nodes.remove(node);
+	}
+
+	public void wake() {
+		Thread t;
+		synchronized (this) {
+			if (closed)
+				return;
+			if (thread == null) {
+				thread = new Thread(this::run, name);
+				thread.setDaemon(true);
+				thread.start();
+				return;
+			}
+			t = thread;
+		}
+		LockSupport.unpark(t);
+	}
+
+	@Override
+	public void close() {
+		Thread t;
+		synchronized (this) {
+			closed = true;
+			t = thread;
+			thread = null;
+		}
+		if (t != null)
+			LockSupport.unpark(t);
+	}
+
+	private void run() {
+		while (!closed) {
+			var next = Long.MAX_VALUE;
+			var now = System.nanoTime();
+			for (var node : nodes) {
+				try {
+					next = Math.min(next, node.tick(now));
+				} catch (RuntimeException re) {
+					LOG.log(Level.WARNING, "Removing frame node that failed to render.", re);
+					nodes.remove(node);
+				}
+			}
+			if (next == Long.MAX_VALUE)
+				LockSupport.park(this);
+			else {
+				var wait = next - System.nanoTime();
+				if (wait > 0)
+					LockSupport.parkNanos(this, wait);
+			}
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects everything written to it into a frame buffer. A {@link #flush()}
+ * only marks the frame as ready, the {@link FrameScheduler} then writes the
+ * whole frame to the target and flushes it at most once per frame interval.
+ * Use {@link #flushNow()} where output must reach the terminal immediately.
+ * <p>
+ * If writing a frame fails, that frame is dropped and the error is thrown
+ * from the next {@link #flush()} or {@link #close()}, so a wrapping
+ * {@link java.io.PrintWriter} reports it through its
+ * {@link java.io.PrintWriter#checkError()}.
+ */
+public final class FrameWriter extends Writer implements FrameScheduler.Node {
+
+	private final Writer target;
+	private final FrameScheduler scheduler;
+	private final long interval;
+
+	private char[] buf = new char[4096];
+	private int count;
+	private boolean pending;
+	private long nextFrame;
+	private IOException error;
+
+	FrameWriter(Writer target, FrameScheduler scheduler, int framesPerSecond) {
+		if (framesPerSecond < 1)
+			throw new IllegalArgumentException("Frame rate must be at least 1.");
+		this.target = target;
+		this.scheduler = scheduler;
+		this.interval = TimeUnit.SECONDS.toNanos(1) / framesPerSecond;
+	}
+
+	@Override
+	public void write(int c) {
+		synchronized (lock) {
+			ensureCapacity(1);
+			buf[count++] = (char) c;
+		}
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) {
+		synchronized (lock) {
+			ensureCapacity(len);
+			System.arraycopy(cbuf, off, buf, count, len);
+			count += len;
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) {
+		synchronized (lock) {
+			ensureCapacity(len);
+			str.getChars(off, off + len, buf, count);
+			count += len;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		synchronized (lock) {
+			checkError();
+			if (pending || count == 0)
+				return;
+			pending = true;
+		}
+		scheduler.wake();
+	}
+
+	public void flushNow() {
+		synchronized (lock) {
+			writeFrame();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			writeFrame();
+			checkError();
+		}
+	}
+
+	@Override
+	public long tick(long now) {
+		synchronized (lock) {
+			if (!pending)
+				return Long.MAX_VALUE;
+			if (now - nextFrame < 0)
+				return nextFrame;
+			writeFrame();
+			nextFrame = now + interval;
+			return Long.MAX_VALUE;
+		}
+	}
+
+	private void writeFrame() {
+		pending = false;
+		try {
+			if (count > 0) {
+				target.write(buf, 0, count);
+				count = 0;
+			}
+			target.flush();
+		} catch (IOException ioe) {
+			count = 0;
+			if (error == null)
+				error = ioe;
+		}
+	}
+
+	private void checkError() throws IOException {
+		if (error != null) {
+			var ioe = error;
+			error = null;
+			throw ioe;
+		}
+	}
+
+	private void ensureCapacity(int len) {
+		if (count + len > buf.length) {
+			buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + len));
+		}
+	}
+}
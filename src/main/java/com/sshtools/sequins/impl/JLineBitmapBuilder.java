@@ -1,14 +1,26 @@
 package com.sshtools.sequins.impl;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.jline.terminal.Cursor;
 
 import com.sshtools.jsixel.lib.bitmap.Bitmap2Sixel;
 import com.sshtools.jsixel.lib.bitmap.FormatType;
@@ -16,22 +28,48 @@ import com.sshtools.jsixel.lib.bitmap.PixelFormat;
 import com.sshtools.jsixel.lib.bitmap.BitmapLoader.ImageType;
 import com.sshtools.jsixel.lib.bitmap.Bitmap2Sixel.Bitmap2SixelBuilder;
 import com.sshtools.jsixel.lib.bitmap.RawBitmap.RawBitmapBuilder;
+import com.sshtools.sequins.AnimatedBitmap;
 import com.sshtools.sequins.Bitmap;
+import com.sshtools.sequins.Bitmap.ImageDisplayMethod;
 import com.sshtools.sequins.Bitmap.ImageSourceFormat;
+import com.sshtools.sequins.Bitmap.ImageTransmission;
 import com.sshtools.sequins.BitmapBuilder;
 import com.sshtools.sequins.DrawContext;
 import com.sshtools.sequins.Sequence;
 import com.sshtools.sequins.Sequins;
+import com.sshtools.sequins.impl.AnimationTracker.Area;
 
 public final class JLineBitmapBuilder extends BitmapBuilder {
 
+	/**
+	 * Size of the raw image data carried by each Kitty packet. A multiple of 3 so
+	 * that every packet but the last has no Base64 padding, and encodes to the
+	 * 4096 bytes that the protocol allows per chunk.
+	 */
+	static final int KITTY_CHUNK = 3072;
+
+	/**
+	 * POSIX shared memory objects are visible as files here on Linux.
+	 */
+	private static final Path SHARED_MEMORY = Path.of("/dev/shm");
+
 	static void packet(Sequence seq, Map<String, Object> parms) {
-		packet(seq, parms, null, 0, 0);
+		packet(seq, parms, null);
 	}
 
-	static void packet(Sequence seq, Map<String, Object> parms, byte[] data, int off, int len) {
+	static void packet(Sequence seq, Map<String, Object> parms, byte[] payload) {
 		seq.esc();
 		seq.str("_G");
+		parameters(seq, parms);
+		if (payload != null) {
+			seq.ch(';');
+			seq.rawStr(Base64.getEncoder().encodeToString(payload));
+		}
+		seq.esc();
+		seq.ch('\\');
+	}
+
+	private static void parameters(Sequence seq, Map<String, Object> parms) {
 		var idx = new AtomicInteger();
 		parms.forEach((k, v) -> {
 			if (idx.getAndIncrement() > 0)
@@ -40,42 +78,442 @@ public final class JLineBitmapBuilder extends BitmapBuilder {
 			seq.ch('=');
 			seq.str(v);
 		});
-		if (data != null) {
-			seq.ch(';');
-			if (len == data.length && off == 0)
-				seq.rawStr(Base64.getEncoder().encodeToString(data));
-			else {
-				var arr = new byte[len];
-				System.arraycopy(data, off, arr, 0, len);
-				seq.rawStr(Base64.getEncoder().encodeToString(arr));
+	}
+
+	/**
+	 * Encodes image data as a series of Kitty graphics packets, reading the
+	 * source a chunk at a time and Base64 encoding into buffers that are reused
+	 * for every packet.
+	 */
+	static final class KittyEncoder {
+		private final Base64.Encoder base64 = Base64.getEncoder();
+		private byte[] chunk = new byte[KITTY_CHUNK];
+		private byte[] next = new byte[KITTY_CHUNK];
+		private final byte[] encoded = new byte[KITTY_CHUNK / 3 * 4];
+		private final ByteBuffer encodedBuffer = ByteBuffer.wrap(encoded);
+
+		/**
+		 * Transmit all data from a stream. The parameters are sent with the first
+		 * packet only, and each packet carries {@code m=1} until the last, which
+		 * carries {@code m=0}. One chunk is read ahead so the last packet is known
+		 * without knowing the length of the stream.
+		 *
+		 * @param seq    sequence to append packets to
+		 * @param parms  parameters of first packet
+		 * @param in     image data
+		 * @param sent   invoked after each packet is appended, or {@code null}
+		 * @throws IOException on error
+		 */
+		void transmit(Sequence seq, Map<String, Object> parms, InputStream in, Consumer<Sequence> sent)
+				throws IOException {
+			var channel = seq.channel(true);
+			var len = in.readNBytes(chunk, 0, KITTY_CHUNK);
+			var first = true;
+			do {
+				var nextLen = len < KITTY_CHUNK ? 0 : in.readNBytes(next, 0, KITTY_CHUNK);
+				packet(seq, channel, first ? parms : Map.of(), len, nextLen > 0, sent);
+
+				var tmp = chunk;
+				chunk = next;
+				next = tmp;
+				len = nextLen;
+				first = false;
+			} while (len > 0);
+		}
+
+		/**
+		 * Transmit the data from a buffer's position to its limit, without
+		 * changing its position.
+		 *
+		 * @param seq    sequence to append packets to
+		 * @param parms  parameters of first packet
+		 * @param data   image data
+		 * @param sent   invoked after each packet is appended, or {@code null}
+		 * @throws IOException on error
+		 */
+		void transmit(Sequence seq, Map<String, Object> parms, ByteBuffer data, Consumer<Sequence> sent)
+				throws IOException {
+			var channel = seq.channel(true);
+			var src = data.duplicate();
+			var first = true;
+			do {
+				var len = Math.min(KITTY_CHUNK, src.remaining());
+				src.get(chunk, 0, len);
+				packet(seq, channel, first ? parms : Map.of(), len, src.hasRemaining(), sent);
+				first = false;
+			} while (src.hasRemaining());
+		}
+
+		private void packet(Sequence seq, WritableByteChannel channel, Map<String, Object> parms, int len,
+				boolean more, Consumer<Sequence> sent) throws IOException {
+			seq.esc();
+			seq.str("_G");
+			if (!parms.isEmpty()) {
+				parameters(seq, parms);
+				seq.ch(',');
+			}
+			seq.str("m=");
+			seq.ch(more ? '1' : '0');
+			if (len > 0) {
+				seq.ch(';');
+				var enclen = base64.encode(len == KITTY_CHUNK ? chunk : Arrays.copyOf(chunk, len), encoded);
+				channel.write(encodedBuffer.clear().limit(enclen));
 			}
+			seq.esc();
+			seq.ch('\\');
+			if (sent != null)
+				sent.accept(seq);
 		}
-		seq.esc();
-		seq.ch('\\');
 	}
 
 	private class KittyBitmap implements Bitmap {
 
-		private final JLineSequins terminal;
-		private final ImageSourceFormat format;
-		private final byte[] data;
+		final JLineSequins terminal;
+		final ImageSourceFormat format;
+		private final Source source;
+		private final ImageTransmission transmission;
+		final Object key = new Object();
 		private Optional<Integer> height;
 		private Optional<Integer> width;
+		private Optional<Integer> columns;
 
-		KittyBitmap(JLineSequins terminal, InputStream in, ImageSourceFormat format, Optional<Integer> width,
-				Optional<Integer> height) throws IOException {
+		KittyBitmap(JLineSequins terminal, Source source, ImageSourceFormat format, ImageTransmission transmission,
+				Optional<Integer> width, Optional<Integer> height, Optional<Integer> columns) {
 			this.terminal = terminal;
+			this.columns = columns;
+			this.source = source;
+			this.transmission = transmission;
 			this.format = format;
 			this.width = width;
 			this.height = height;
+		}
+
+		@Override
+		public Sequins getTerminal() {
+			return terminal;
+		}
+
+		/**
+		 * Write each packet to the terminal as soon as it is encoded, so neither
+		 * the image nor the full escape sequence is ever held in memory.
+		 */
+		@Override
+		public void draw() throws IOException {
+			var wrt = terminal.getWriter();
+			var seq = terminal.borrowSequence();
+			try {
+				transmit(seq, s -> {
+					wrt.write(s.toString());
+					s.reset();
+				});
+			} finally {
+				terminal.releaseSequence(seq);
+			}
+			wrt.flush();
+		}
+
+		@Override
+		public Sequence draw(DrawContext context, Sequence seq) throws IOException {
+			transmit(seq, null);
+			return seq;
+		}
+
+		/**
+		 * The first draw uploads the image with an ID and places it, later draws
+		 * only place it again while the ID is still registered with the terminal.
+		 */
+		private void transmit(Sequence seq, Consumer<Sequence> sent) throws IOException {
+			var images = terminal.kittyImages();
+			var existing = images.id(key);
+			if (existing.isPresent() && source.buffer().isEmpty()) {
+				place(seq, existing.getAsInt(), sent);
+				return;
+			}
+
+			var prms = new LinkedHashMap<String, Object>();
+			prms.put("a", 't');
+			prms.put("q", 2);
+			switch (format) {
+			case PNG:
+				prms.put("f", 100);
+				break;
+			case RGB:
+				if (!width.isPresent() || !height.isPresent())
+					throw new IllegalStateException("Width and height must be specified for RGB images.");
+				prms.put("f", 24);
+				break;
+			case RGBA:
+				if (!width.isPresent() || !height.isPresent())
+					throw new IllegalStateException("Width and height must be specified for RGBA images.");
+				prms.put("f", 32);
+				break;
+			default:
+				throw new UnsupportedOperationException();
+			}
+			width.ifPresent(w -> prms.put("s", w));
+			height.ifPresent(w -> prms.put("v", w));
+
+			/* A buffer may have changed, so is uploaded again, replacing the image */
+			var id = existing.isPresent() ? existing.getAsInt() : images.add(key);
+			prms.put("i", id);
+			for (var evicted : images.evicted()) {
+				var del = new LinkedHashMap<String, Object>();
+				del.put("a", 'd');
+				del.put("d", 'I');
+				del.put("i", evicted);
+				del.put("q", 2);
+				control(seq, del, sent);
+			}
+
+			try {
+				switch (transmission) {
+				case FILE:
+					prms.put("t", 'f');
+					control(seq, prms, source.path().orElseThrow().toString(), sent);
+					break;
+				case TEMP_FILE:
+					prms.put("t", 't');
+					control(seq, prms, write(Files.createTempFile("sequins-tty-graphics-protocol-", ".img")).toString(), sent);
+					break;
+				case SHARED_MEMORY:
+					prms.put("t", 's');
+					control(seq, prms, "/" + write(Files.createTempFile(SHARED_MEMORY, "sequins-", ".img")).getFileName(), sent);
+					break;
+				default:
+					var buffer = source.buffer();
+					if (buffer.isPresent())
+						new KittyEncoder().transmit(seq, prms, buffer.get(), sent);
+					else {
+						try (var in = source.open()) {
+							new KittyEncoder().transmit(seq, prms, in, sent);
+						}
+					}
+					break;
+				}
+			} catch (IOException | RuntimeException e) {
+				images.remove(key);
+				throw e;
+			}
+			place(seq, id, sent);
+		}
+
+		private void place(Sequence seq, int id, Consumer<Sequence> sent) {
+			var prms = new LinkedHashMap<String, Object>();
+			prms.put("a", 'p');
+			prms.put("i", id);
+			columns.ifPresent(c -> prms.put("c", c));
+			prms.put("q", 2);
+			control(seq, prms, sent);
+		}
+
+		void control(Sequence seq, Map<String, Object> parms, Consumer<Sequence> sent) {
+			packet(seq, parms);
+			if (sent != null)
+				sent.accept(seq);
+		}
+
+		private void control(Sequence seq, Map<String, Object> parms, String payload, Consumer<Sequence> sent) {
+			packet(seq, parms, payload.getBytes(StandardCharsets.UTF_8));
+			if (sent != null)
+				sent.accept(seq);
+		}
+
+		/**
+		 * Copy the image to a file the terminal will read and then delete.
+		 */
+		private Path write(Path file) throws IOException {
+			try {
+				var buffer = source.buffer();
+				if (buffer.isPresent()) {
+					try (var out = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+						var src = buffer.get().duplicate();
+						while (src.hasRemaining())
+							out.write(src);
+					}
+				} else {
+					try (var in = source.open(); var out = Files.newOutputStream(file)) {
+						in.transferTo(out);
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				Files.deleteIfExists(file);
+				throw e;
+			}
+			return file;
+		}
+
+	}
+	private static Bitmap2Sixel rawConverter(InputStream in, ImageSourceFormat format, int width, int height) {
+		return new Bitmap2SixelBuilder().
+				fromBitmap(new RawBitmapBuilder().
+						fromStream(in).
+						withHeight(height).
+						withWidth(width).
+						withBitsPerPixel(format == ImageSourceFormat.RGB ? 24 : 32).
+						withPixelFormat(format == ImageSourceFormat.RGB ? PixelFormat.RGB888 : PixelFormat.RGBA8888).
+						withFormatType(FormatType.COLOR).
+						build()).
+				build();
+	}
+
+	/**
+	 * Stream the pixels of an area of an image, a row at a time.
+	 */
+	private static InputStream area(ByteBuffer pixels, int stride, int bpp, Area area) {
+		return new InputStream() {
+			private final int rowBytes = area.width() * bpp;
+			private int row;
+			private int col;
+
+			@Override
+			public int read() {
+				var b = new byte[1];
+				return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if (len == 0)
+					return 0;
+				if (row == area.height())
+					return -1;
+				var n = Math.min(len, rowBytes - col);
+				pixels.get(pixels.position() + (area.y() + row) * stride + area.x() * bpp + col, b, off, n);
+				col += n;
+				if (col == rowBytes) {
+					col = 0;
+					row++;
+				}
+				return n;
+			}
+		};
+	}
+
+	/**
+	 * After the image has been uploaded, changed areas are sent as edits to its
+	 * root frame.
+	 */
+	private final class KittyAnimatedBitmap extends KittyBitmap implements AnimatedBitmap {
+		private final ByteBuffer pixels;
+		private final int imageWidth;
+		private final AnimationTracker tracker;
+		private boolean drawn;
+
+		KittyAnimatedBitmap(JLineSequins terminal, Source source, ByteBuffer pixels, ImageSourceFormat format,
+				ImageTransmission transmission, int width, int height) {
+			super(terminal, source, format, transmission, Optional.of(width), Optional.of(height), Optional.empty());
+			this.pixels = pixels;
+			this.imageWidth = width;
+			tracker = new AnimationTracker(width, height);
+		}
+
+		@Override
+		public void changed(int x, int y, int width, int height) {
+			tracker.changed(x, y, width, height);
+		}
+
+		@Override
+		public void changed() {
+			tracker.changed();
+		}
+
+		@Override
+		public void draw() throws IOException {
+			tracker.clear();
+			super.draw();
+			drawn = true;
+		}
+
+		@Override
+		public Sequence draw(DrawContext context, Sequence seq) throws IOException {
+			tracker.clear();
+			super.draw(context, seq);
+			drawn = true;
+			return seq;
+		}
+
+		@Override
+		public boolean update() throws IOException {
+			var id = terminal.kittyImages().id(key);
+			if (!drawn || id.isEmpty()) {
+				draw();
+				return true;
+			}
+
+			var areas = tracker.take();
+			if (areas.isEmpty())
+				return false;
 
-			var bout = new ByteArrayOutputStream();
+			var started = System.nanoTime();
+			var bpp = format == ImageSourceFormat.RGB ? 3 : 4;
+			var wrt = terminal.getWriter();
+			var seq = terminal.borrowSequence();
+			var written = new long[1];
 			try {
-				in.transferTo(bout);
+				Consumer<Sequence> sent = s -> {
+					var str = s.toString();
+					written[0] += str.length();
+					wrt.write(str);
+					s.reset();
+				};
+				var encoder = new KittyEncoder();
+				for (var area : areas) {
+					var prms = new LinkedHashMap<String, Object>();
+					prms.put("a", 'f');
+					prms.put("i", id.getAsInt());
+					prms.put("r", 1);
+					prms.put("x", area.x());
+					prms.put("y", area.y());
+					prms.put("s", area.width());
+					prms.put("v", area.height());
+					prms.put("f", bpp * 8);
+					prms.put("q", 2);
+					encoder.transmit(seq, prms, area(pixels, imageWidth * bpp, bpp, area), sent);
+				}
+				var prms = new LinkedHashMap<String, Object>();
+				prms.put("a", 'a');
+				prms.put("i", id.getAsInt());
+				prms.put("c", 1);
+				prms.put("q", 2);
+				control(seq, prms, sent);
 			} finally {
-				in.close();
+				terminal.releaseSequence(seq);
 			}
-			data = bout.toByteArray();
+			wrt.flush();
+			tracker.sent(written[0], started);
+			return true;
+		}
+	}
+
+	/**
+	 * Changed areas are sent by encoding only the six pixel high Sixel bands that
+	 * they cover, and drawing them over the image where it was first drawn with
+	 * a transparent background, skipping the bands above.
+	 * <p>
+	 * Updates restore the cursor, so it stays where drawing the image left it.
+	 * If it has moved between updates, something else was written and the image
+	 * may have scrolled, so it is drawn afresh instead.
+	 */
+	private final class SixelAnimatedBitmap implements AnimatedBitmap {
+		private final static int BAND = 6;
+
+		private final JLineSequins terminal;
+		private final ByteBuffer pixels;
+		private final ImageSourceFormat format;
+		private final int width;
+		private final int height;
+		private final AnimationTracker tracker;
+		private Optional<Cursor> origin = Optional.empty();
+		private Optional<Cursor> resting = Optional.empty();
+		private boolean drawn;
+
+		SixelAnimatedBitmap(JLineSequins terminal, ByteBuffer pixels, ImageSourceFormat format, int width, int height) {
+			this.terminal = terminal;
+			this.pixels = pixels;
+			this.format = format;
+			this.width = width;
+			this.height = height;
+			tracker = new AnimationTracker(width, height);
 		}
 
 		@Override
@@ -83,75 +521,192 @@ public final class JLineBitmapBuilder extends BitmapBuilder {
 			return terminal;
 		}
 
+		@Override
+		public void changed(int x, int y, int width, int height) {
+			tracker.changed(x, y, width, height);
+		}
+
+		@Override
+		public void changed() {
+			tracker.changed();
+		}
+
 		@Override
 		public Sequence draw(DrawContext context, Sequence seq) throws IOException {
-			var pos = 0;
-			while (pos < data.length) {
-				var len = Math.min(4096, data.length - pos);
-				var prms = new LinkedHashMap<String, Object>();
+			tracker.clear();
+			/* Anything already written must be on screen before the origin is asked for */
+			terminal.flush();
+			origin = terminal.cursorPosition();
+			resting = Optional.empty();
+			seq.channel(true).write(ByteBuffer.wrap(encode(0, height)));
+			drawn = true;
+			return seq;
+		}
 
-				if (pos == 0) {
-					prms.put("a", 'T'); // TODO re-using placement
-					switch (format) {
-					case PNG:
-						prms.put("f", 100);
-						break;
-					case RGB:
-						if (!width.isPresent() || !height.isPresent())
-							throw new IllegalStateException("Width and height must be specified for RGB images.");
-						prms.put("f", 24);
-						break;
-					case RGBA:
-						if (!width.isPresent() || !height.isPresent())
-							throw new IllegalStateException("Width and height must be specified for RGBA images.");
-						prms.put("f", 32);
-						break;
-					default:
-						throw new UnsupportedOperationException();
-					}
-					width.ifPresent(w -> prms.put("s", w));
-					height.ifPresent(w -> prms.put("v", w));
+		@Override
+		public boolean update() throws IOException {
+			if (!drawn) {
+				draw();
+				return true;
+			}
+
+			var bounds = tracker.bounds();
+			if (tracker.take().isEmpty())
+				return false;
+			if (origin.isEmpty() || moved()) {
+				draw();
+				return true;
+			}
+
+			var started = System.nanoTime();
+			var top = bounds.y() / BAND * BAND;
+			var bottom = Math.min(height, (bounds.y() + bounds.height() + BAND - 1) / BAND * BAND);
+			var data = encode(top, bottom - top);
+			var start = dataStart(data);
+			if (start == -1) {
+				draw();
+				return true;
+			}
+			var raster = parameters(data, start, (byte) '"');
+			var palette = palette(data, raster);
+
+			var wrt = terminal.getWriter();
+			var seq = terminal.borrowSequence();
+			try {
+				var cursor = origin.get();
+				seq.esc().ch('7');
+				seq.csi().num(cursor.getY() + 1).ch(';').num(cursor.getX() + 1).ch('H');
+				seq.esc().str("P0;1;0q");
+				/* Raster attributes and colours must come before any Sixel data,
+				 * including the graphics new lines down to the strip */
+				rasterAttributes(seq, data, start, raster, top);
+				seq.channel(true).write(ByteBuffer.wrap(data, raster, palette - raster));
+				seq.ch(top / BAND, '-');
+				seq.channel(true).write(ByteBuffer.wrap(data, palette, data.length - palette));
+				seq.esc().ch('8');
+				var str = seq.toString();
+				wrt.write(str);
+				wrt.flush();
+				tracker.sent(str.length(), started);
+			} finally {
+				terminal.releaseSequence(seq);
+			}
+			return true;
+		}
+
+		/**
+		 * Get whether the cursor has moved since the last update, in which case the
+		 * image may no longer be at its origin. Pending output is written first so
+		 * that the cursor is where it will be when this update is shown.
+		 */
+		private boolean moved() {
+			terminal.flush();
+			var cursor = terminal.cursorPosition();
+			if (cursor.isEmpty())
+				return true;
+			if (resting.isEmpty()) {
+				resting = cursor;
+				return false;
+			}
+			var was = resting.get();
+			return was.getX() != cursor.get().getX() || was.getY() != cursor.get().getY();
+		}
+
+		/**
+		 * Write the strip's raster attributes with the height extended to cover the
+		 * bands skipped above it.
+		 */
+		private void rasterAttributes(Sequence seq, byte[] data, int start, int end, int top) throws IOException {
+			if (end == start)
+				return;
+			var attrs = new String(data, start + 1, end - start - 1, StandardCharsets.US_ASCII).split(";");
+			if (attrs.length == 4) {
+				try {
+					seq.ch('"').str(attrs[0]).ch(';').str(attrs[1]).ch(';').str(attrs[2]).ch(';')
+							.num(top + Integer.parseInt(attrs[3]));
+					return;
+				} catch (NumberFormatException nfe) {
 				}
+			}
+			seq.channel(true).write(ByteBuffer.wrap(data, start, end - start));
+		}
 
-				if (data.length - pos > 4096)
-					prms.put("m", 1);
-				else
-					prms.put("m", 0);
+		private byte[] encode(int y, int rows) throws IOException {
+			var bpp = format == ImageSourceFormat.RGB ? 3 : 4;
+			var converter = rawConverter(area(pixels, width * bpp, bpp, new Area(0, y, width, rows)), format, width, rows);
+			var out = new ByteArrayOutputStream();
+			converter.write(Channels.newChannel(out));
+			return out.toByteArray();
+		}
 
-				packet(seq, prms, data, pos, len);
+		/**
+		 * Find where the data follows the Sixel introducer (ESC P, numeric
+		 * parameters, then q), so the strip can be given its own introducer.
+		 */
+		private int dataStart(byte[] data) {
+			if (data.length < 3 || data[0] != 27 || data[1] != 'P')
+				return -1;
+			for (var i = 2; i < data.length; i++) {
+				var b = data[i];
+				if (b == 'q')
+					return i + 1;
+				else if ((b < '0' || b > '9') && b != ';')
+					return -1;
+			}
+			return -1;
+		}
 
-				pos += len;
+		/**
+		 * Find the end of the colour definitions ({@code #Pc;Pu;Px;Py;Pz}) at the
+		 * start of the data. A colour selection ({@code #Pc}) starts the pixels.
+		 */
+		private static int palette(byte[] data, int start) {
+			var p = start;
+			while (p < data.length && data[p] == '#') {
+				var end = parameters(data, p, (byte) '#');
+				var fields = 1;
+				for (var i = p + 1; i < end; i++) {
+					if (data[i] == ';')
+						fields++;
+				}
+				if (fields != 5)
+					break;
+				p = end;
 			}
-			return seq;
+			return p;
 		}
 
+		/**
+		 * Find the end of the numeric parameters following an introducer character
+		 * at the start position, or the start position if it is not there.
+		 */
+		private static int parameters(byte[] data, int start, byte introducer) {
+			if (start >= data.length || data[start] != introducer)
+				return start;
+			var p = start + 1;
+			while (p < data.length && ((data[p] >= '0' && data[p] <= '9') || data[p] == ';'))
+				p++;
+			return p;
+		}
 	}
+
 	private class JSixelBitmap implements Bitmap {
 
 		private final JLineSequins terminal;
 		private final Bitmap2Sixel converter;
+		private final SixelCache.Key key;
 
 		JSixelBitmap(JLineSequins terminal, InputStream in, ImageSourceFormat format, Optional<Integer> width,
 				Optional<Integer> height) throws IOException {
 			this.terminal = terminal;
+			key = new SixelCache.Key(new Object(), width.orElse(-1), height.orElse(-1));
 			
 			switch (format) {
 			case RGB:
-				var bpp = 24;
-				var fmt = PixelFormat.RGB888;
 			case RGBA: 
-				bpp = 32;
-				fmt = PixelFormat.RGBA8888;
-				converter = new Bitmap2SixelBuilder().
-						fromBitmap(new RawBitmapBuilder().
-								fromStream(in).
-								withHeight(height.orElseThrow(() -> new IllegalStateException("Height must be supplied."))).
-								withWidth(height.orElseThrow(() -> new IllegalStateException("Width must be supplied."))).
-								withBitsPerPixel(bpp).
-								withPixelFormat(fmt).
-								withFormatType(FormatType.COLOR).
-								build()).
-						build();
+				converter = rawConverter(in, format, 
+						width.orElseThrow(() -> new IllegalStateException("Width must be supplied.")),
+						height.orElseThrow(() -> new IllegalStateException("Height must be supplied.")));
 				break;
 			default:
 				try {
@@ -173,13 +728,30 @@ public final class JLineBitmapBuilder extends BitmapBuilder {
 
 		@Override
 		public Sequence draw(DrawContext context, Sequence seq) throws IOException {
-			converter.write(seq.channel());
+			seq.channel(true).write(encoded());
 			return seq;
 		}
 
+		/**
+		 * Get the encoded stream, only quantising and encoding the image if it is
+		 * no longer cached.
+		 */
+		ByteBuffer encoded() throws IOException {
+			var cache = SixelCache.get();
+			var encoded = cache.get(key);
+			if (encoded == null) {
+				var out = new ByteArrayOutputStream();
+				converter.write(Channels.newChannel(out));
+				var data = out.toByteArray();
+				cache.put(key, data);
+				encoded = ByteBuffer.wrap(data);
+			}
+			return encoded;
+		}
+
 	}
 
-	private class EmptyBitmap implements Bitmap {
+	private class EmptyBitmap implements AnimatedBitmap {
 
 		private final JLineSequins terminal;
 
@@ -197,6 +769,19 @@ public final class JLineBitmapBuilder extends BitmapBuilder {
 			return seq;
 		}
 
+		@Override
+		public void changed(int x, int y, int width, int height) {
+		}
+
+		@Override
+		public void changed() {
+		}
+
+		@Override
+		public boolean update() throws IOException {
+			return false;
+		}
+
 	}
 
 	private JLineSequins terminal;
@@ -205,39 +790,140 @@ public final class JLineBitmapBuilder extends BitmapBuilder {
 		this.terminal = terminal;
 	}
 
+	@Override
+	protected Bitmap build(Source source, ImageSourceFormat format) {
+		var width = source.width().or(() -> this.width);
+		var height = source.height().or(() -> this.height);
+		var columns = this.columns;
+		try {
+			var scaled = downscale(source, format, width, height);
+			if (scaled.isPresent()) {
+				var pixels = scaled.get();
+				source = () -> new ByteArrayInputStream(pixels.array());
+				width = Optional.of(pixels.width());
+				height = Optional.of(pixels.height());
+				columns = Optional.empty();
+			}
+
+			var display = this.display.or(() -> terminal.imageDisplayMethod());
+			if (display.isEmpty()) {
+				if (failIfUnspported)
+					throw new IllegalStateException(
+							"This device cannot positively be identified as supporting Kitty or Sixel graphics protocols.");
+			} else {
+				switch (display.get()) {
+				case KITTY:
+					return new KittyBitmap(terminal, source, format, transmission(source), width, height, columns);
+				case SIXEL:
+					try (var in = source.open()) {
+						return new JSixelBitmap(terminal, in, format, width, height);
+					}
+				}
+			}
+			return new EmptyBitmap(terminal);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	@Override
 	public Bitmap build(InputStream in, ImageSourceFormat format) {
+		if (this.display.or(() -> terminal.imageDisplayMethod()).orElse(null) == ImageDisplayMethod.SIXEL
+				&& !scalable(format, width, height)) {
+			return build(() -> in, format);
+		}
+
+		/* A plain stream can only be read once, but the bitmap may be drawn many times */
+		try (in) {
+			var data = in.readAllBytes();
+			return build(() -> new ByteArrayInputStream(data), format);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private record Scaled(byte[] array, int width, int height) {
+	}
+
+	private boolean scalable(ImageSourceFormat format, Optional<Integer> width, Optional<Integer> height) {
+		return columns.isPresent() && width.isPresent() && height.isPresent()
+				&& (format == ImageSourceFormat.RGB || format == ImageSourceFormat.RGBA);
+	}
+
+	/**
+	 * Scale raw pixels down to fit the requested cells, if they are larger.
+	 */
+	private Optional<Scaled> downscale(Source source, ImageSourceFormat format, Optional<Integer> width,
+			Optional<Integer> height) throws IOException {
+		if (!scalable(format, width, height))
+			return Optional.empty();
+		var cell = terminal.cellSize();
+		if (cell.isEmpty())
+			return Optional.empty();
+
+		var srcWidth = width.get();
+		var srcHeight = height.get();
+		var scale = Math.min(1d, Math.min((double) columns.get() * cell.get().width() / srcWidth,
+				(double) rows.get() * cell.get().height() / srcHeight));
+		if (scale >= 1)
+			return Optional.empty();
+
+		var scaledWidth = Math.max(1, (int) Math.round(srcWidth * scale));
+		var scaledHeight = Math.max(1, (int) Math.round(srcHeight * scale));
+		var bpp = format == ImageSourceFormat.RGB ? 3 : 4;
+		ByteBuffer pixels;
+		var buffer = source.buffer();
+		if (buffer.isPresent())
+			pixels = buffer.get();
+		else {
+			try (var in = source.open()) {
+				pixels = ByteBuffer.wrap(in.readAllBytes());
+			}
+		}
+		return Optional.of(new Scaled(Downscaler.areaAverage(pixels, srcWidth, srcHeight, bpp, scaledWidth, scaledHeight).array(),
+				scaledWidth, scaledHeight));
+	}
+
+	@Override
+	public AnimatedBitmap buildAnimated(ByteBuffer pixels, int width, int height, ImageSourceFormat format) {
+		if (format != ImageSourceFormat.RGB && format != ImageSourceFormat.RGBA)
+			throw new IllegalArgumentException("Animated bitmaps must be RGB or RGBA.");
+		var source = source(pixels, width, height, format);
 		var display = this.display.or(() -> terminal.imageDisplayMethod());
 		if (display.isEmpty()) {
 			if (failIfUnspported)
 				throw new IllegalStateException(
 						"This device cannot positively be identified as supporting Kitty or Sixel graphics protocols.");
-		} else {
-			switch (display.get()) {
-			case KITTY:
-				return kittyImage(in, format);
-			case SIXEL:
-				return sixelImage(in, format);
-			}
+			return new EmptyBitmap(terminal);
+		}
+		switch (display.get()) {
+		case KITTY:
+			return new KittyAnimatedBitmap(terminal, source, pixels, format, transmission(source), width, height);
+		default:
+			return new SixelAnimatedBitmap(terminal, pixels, format, width, height);
 		}
-		return new EmptyBitmap(terminal);
 	}
 
-	private Bitmap kittyImage(InputStream in, ImageSourceFormat format) {
-		try {
-			return new KittyBitmap(terminal, in, format, width, height);
-		} catch (IOException e) {
-			throw new UncheckedIOException(e);
+	@Override
+	protected Bitmap prepare(Bitmap bitmap) {
+		if (bitmap instanceof JSixelBitmap sixel) {
+			try {
+				sixel.encoded();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
 		}
+		return bitmap;
 	}
 
-	private Bitmap sixelImage(InputStream in, ImageSourceFormat format) {
-		try {
-			//return new SixelBitmap(terminal, in, format, width, height);
-			return new JSixelBitmap(terminal, in, format, width, height);
-		} catch (IOException e) {
-			throw new UncheckedIOException(e);
-		}
+	private ImageTransmission transmission(Source source) {
+		var tx = transmission.filter(t -> terminal.isLocal()).orElse(ImageTransmission.DIRECT);
+		if (tx == ImageTransmission.FILE && source.path().isEmpty())
+			return ImageTransmission.TEMP_FILE;
+		else if (tx == ImageTransmission.SHARED_MEMORY && !Files.isDirectory(SHARED_MEMORY))
+			return ImageTransmission.TEMP_FILE;
+		else
+			return tx;
 	}
 
 }
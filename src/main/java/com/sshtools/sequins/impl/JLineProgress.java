@@ -22,26 +22,28 @@ import com.sshtools.sequins.Sequins;
 
 public class JLineProgress extends DumbConsoleProgress {
 
-	JLineProgress(Sequins terminal, boolean showSpinner, boolean hideCursor, Duration spinnerStartDelay, boolean percentageText, String name,
-			Object... args) {
-		this(terminal, showSpinner, hideCursor, spinnerStartDelay, percentageText, new Object(), 0, name, args);
+	final static int[] CLOCK_SPINNER = "🕐🕐🕒🕓🕓🕓🕖🕗🕘🕙🕚🕛".codePoints().toArray();
+
+	JLineProgress(Sequins terminal, FrameScheduler scheduler, boolean showSpinner, boolean hideCursor, Duration spinnerStartDelay, boolean percentageText,
+			boolean transferStats, String name, Object... args) {
+		this(terminal, scheduler, showSpinner, hideCursor, spinnerStartDelay, percentageText, transferStats, null, 0, name, args);
 	}
 
-	protected JLineProgress(Sequins terminal, boolean showSpinner, boolean hideCursor, Duration spinnerStartDelay,  boolean percentageText, Object lock,
-			int indent, String name, Object... args) {
-		super(terminal, showSpinner, hideCursor, spinnerStartDelay, percentageText, lock, indent, name, "🕐🕐🕒🕓🕓🕓🕖🕗🕘🕙🕚🕛".codePoints().toArray(), args);
+	protected JLineProgress(Sequins terminal, FrameScheduler scheduler, boolean showSpinner, boolean hideCursor, Duration spinnerStartDelay,  boolean percentageText, boolean transferStats,
+			Updates updates, int indent, String name, Object... args) {
+		super(terminal, scheduler, showSpinner, hideCursor, spinnerStartDelay, percentageText, transferStats, updates, indent, name, CLOCK_SPINNER, args);
 	}
 
 
 	@Override
-	protected JLineProgress createNewJob(Object lock, String name, Object... args) {
-		return new JLineProgress((JLineSequins) terminal, indeterminate, hideCursor, spinnerStartDelay, percentageText, lock, indent(), name, args);
+	protected JLineProgress createNewJob(Updates updates, String name, Object... args) {
+		return new JLineProgress((JLineSequins) terminal, scheduler, indeterminate, hideCursor, spinnerStartDelay, percentageText, transferStats, updates, indent(), name, args);
 	}
 
 	@Override
 	protected void printSpinner(Sequence seq) {
 		seq.esc().ch('7');
-		if (spinner == null) {
+		if (!spinnerActive()) {
 			seq.str(" ");
 		} else {
 			seq.msg("{0}", Character.toString(spinnerChars[spinner.index]));
@@ -59,9 +61,14 @@ public class JLineProgress extends DumbConsoleProgress {
 
 	@Override
 	protected void startOfLine() {
-		var seq = terminal.createSequence();
-		seq.cr();
-		terminal.print(seq.toString());
+		var seq = terminal.borrowSequence();
+		try {
+			seq.cr();
+			terminal.print(seq.toString());
+		}
+		finally {
+			terminal.releaseSequence(seq);
+		}
 		startOfLineNeeded = false;
 	}
 	
@@ -2,8 +2,10 @@ package com.sshtools.sequins.impl;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.System.Logger.Level;
+import java.util.Map;
 import java.util.Optional;
-import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jline.reader.Completer;
@@ -11,10 +13,12 @@ import org.jline.reader.LineReaderBuilder;
 import org.jline.terminal.Cursor;
 import org.jline.terminal.Terminal;
 import org.jline.terminal.TerminalBuilder;
+import org.jline.terminal.spi.TerminalExt;
 import org.jline.utils.InfoCmp.Capability;
 import org.jline.utils.ShutdownHooks;
 
 import com.sshtools.sequins.BitmapBuilder;
+import com.sshtools.sequins.Capabilities;
 import com.sshtools.sequins.Constraint;
 import com.sshtools.sequins.ProgressBuilder;
 import com.sshtools.sequins.Sequence;
@@ -23,14 +27,26 @@ import com.sshtools.sequins.Bitmap.ImageDisplayMethod;
 
 public class JLineSequins extends AbstractTerminal implements Sequins {
 
-	private static Optional<ImageDisplayMethod> cachedImageDisplayMode = null;
-	private static Object detectLock = new Object();
+	/**
+	 * Size of a character cell in pixels.
+	 */
+	record CellSize(int width, int height) {
+	}
+
+	/**
+	 * How long to wait for the terminal to answer capability queries.
+	 */
+	private final static System.Logger LOG = System.getLogger(JLineSequins.class.getName());
+	private final static long PROBE_TIMEOUT = 500;
+
 	private final Terminal nativeTerm;
 	private final PrintWriter errWriter;
 
 	private final JLineSequins parent;
 	private final Optional<Constraint> region;
 	private final boolean cursorVisibleAtStartup;
+	private final KittyImages kittyImages;
+	private CompletableFuture<Capabilities> capabilities;
 
 	public JLineSequins() throws IOException {
 		this(TerminalBuilder.builder().build());
@@ -41,6 +57,7 @@ public class JLineSequins extends AbstractTerminal implements Sequins {
 		errWriter = new PrintWriter(System.err, true);
 		this.parent = null;
 		region = Optional.empty();
+		kittyImages = new KittyImages();
 		cursorVisibleAtStartup = cursorVisible();
 		addShutdownHook();
 	}
@@ -50,13 +67,16 @@ public class JLineSequins extends AbstractTerminal implements Sequins {
 		errWriter = new PrintWriter(System.err, true);
 		this.parent = parent;
 		this.region = Optional.of(region);
+		kittyImages = parent.kittyImages;
 		cursorVisibleAtStartup = cursorVisible();
 		addShutdownHook();
 	}
 
 	@Override
 	public void clear() {
+		flush();
 		region.ifPresentOrElse(r -> {
+			awaitProbe();
 			var p = new AtomicInteger();
 			Cursor c = nativeTerm.getCursorPosition(p::set);
 			if (c != null) {
@@ -72,8 +92,11 @@ public class JLineSequins extends AbstractTerminal implements Sequins {
 
 	@Override
 	public void close() {
+		flush();
+		frameScheduler().close();
 		if (parent != null) {
 			var region = parent.constraint();
+			awaitProbe();
 			var p = new AtomicInteger();
 			Cursor c = nativeTerm.getCursorPosition(p::set);
 			if (c != null) {
@@ -194,6 +217,11 @@ public class JLineSequins extends AbstractTerminal implements Sequins {
 				public String toString() {
 					return buffer == null ? super.toString() : buffer.toAnsi(nativeTerm);
 				}
+
+				@Override
+				protected Terminal terminal() {
+					return nativeTerm;
+				}
 			};
 		}
 	}
@@ -204,20 +232,39 @@ public class JLineSequins extends AbstractTerminal implements Sequins {
 	}
 
 	@Override
-	public PrintWriter getWriter() {
+	protected PrintWriter nativeWriter() {
 		return nativeTerm.writer();
 	}
 
 	@Override
 	public Optional<ImageDisplayMethod> imageDisplayMethod() {
-		if (cachedImageDisplayMode == null) {
-			synchronized (detectLock) {
-				if (cachedImageDisplayMode == null) {
-					cachedImageDisplayMode = detectImageDisplayMethodImpl();
-				}
-			}
+		if (isDumb()) {
+			return Optional.empty();
+		} else if ("kitty".equals(System.getenv("SEQUINS_IMAGE_MODE"))
+				|| "kitty".equals(System.getProperty("sequins.image.mode"))) {
+			return Optional.of(ImageDisplayMethod.KITTY);
+		} else if ("sixel".equals(System.getenv("SEQUINS_IMAGE_MODE"))
+				|| "sixel".equals(System.getProperty("sequins.image.mode"))) {
+			return Optional.of(ImageDisplayMethod.SIXEL);
+		} else {
+			return capabilities().join().imageDisplayMethod();
 		}
-		return cachedImageDisplayMode;
+	}
+
+	/**
+	 * Start asking the terminal about its capabilities, if not already started.
+	 * All queries are written at once, and the replies are read and parsed on a
+	 * background thread as they arrive, so this does not block. Capabilities
+	 * remembered from an earlier run are used instead of asking, if there are
+	 * any.
+	 */
+	@Override
+	public synchronized CompletableFuture<Capabilities> capabilities() {
+		if (parent != null)
+			return parent.capabilities();
+		if (capabilities == null)
+			capabilities = probeCapabilities();
+		return capabilities;
 	}
 
 	@Override
@@ -250,6 +297,8 @@ public class JLineSequins extends AbstractTerminal implements Sequins {
 		if (height < 1 || height > constraint().height()) {
 			throw new IllegalArgumentException("Viewport must be less than terminal height and > 0.");
 		}
+		flush();
+		awaitProbe();
 		var p = new AtomicInteger();
 		nativeTerm.enterRawMode();
 		Cursor c = nativeTerm.getCursorPosition(p::set);
@@ -270,6 +319,7 @@ public class JLineSequins extends AbstractTerminal implements Sequins {
 
 	@Override
 	public void cursorVisible(boolean visible) {
+		flush();
 		if(visible) {
 			nativeTerm.puts(Capability.cursor_visible, true);
 		}
@@ -285,16 +335,45 @@ public class JLineSequins extends AbstractTerminal implements Sequins {
 	}
 
 	@Override
-	protected DumbConsoleProgress createProgress(ProgressBuilder builder) {
+	protected TerminalProgress createProgress(ProgressBuilder builder) {
 		if (isDumb()) {
-			return new DumbConsoleProgress(this, builder.indeterminate(), builder.hideCursor(),  builder.spinnerStartDelay(),
-					builder.percentageText(), builder.message(), new int[] { '.' }, builder.args());
+			return new DumbConsoleProgress(this, frameScheduler(), builder.indeterminate(), builder.hideCursor(),  builder.spinnerStartDelay(),
+					builder.percentageText(), builder.transferStats(), builder.message(), new int[] { '.' }, builder.args());
+		} else if (builder.liveRegion() && ScreenRegion.isSupported(nativeTerm)) {
+			return new RegionProgress(this, frameScheduler(), builder.indeterminate(), builder.hideCursor(), builder.percentageText(),
+					builder.transferStats(), builder.message(), builder.args());
 		} else {
-			return new JLineProgress(JLineSequins.this, builder.indeterminate(), builder.hideCursor(), builder.spinnerStartDelay(),
-					builder.percentageText(), builder.message(), new int[] { '.' }, builder.args());
+			return new JLineProgress(JLineSequins.this, frameScheduler(), builder.indeterminate(), builder.hideCursor(), builder.spinnerStartDelay(),
+					builder.percentageText(), builder.transferStats(), builder.message(), new int[] { '.' }, builder.args());
 		}
 	}
 
+	/**
+	 * Get whether the terminal is most likely running on this machine, and so
+	 * can read its file system. A terminal reached over SSH is not.
+	 *
+	 * @return local
+	 */
+	boolean isLocal() {
+		return System.getenv("SSH_CONNECTION") == null && System.getenv("SSH_CLIENT") == null
+				&& System.getenv("SSH_TTY") == null;
+	}
+
+	Optional<Cursor> cursorPosition() {
+		awaitProbe();
+		var p = new AtomicInteger();
+		return Optional.ofNullable(nativeTerm.getCursorPosition(p::set));
+	}
+
+	Optional<CellSize> cellSize() {
+		var caps = capabilities().join();
+		return caps.cellWidth().flatMap(w -> caps.cellHeight().map(h -> new CellSize(w, h)));
+	}
+
+	KittyImages kittyImages() {
+		return kittyImages;
+	}
+
 	boolean isDumb() {
 		return nativeTerm.getType().equals(Terminal.TYPE_DUMB) || nativeTerm.getType().equals(Terminal.TYPE_DUMB_COLOR);
 	}
@@ -307,46 +386,122 @@ public class JLineSequins extends AbstractTerminal implements Sequins {
 	}
 
 	private LineReaderBuilder createLineReaderBuilder() {
+		awaitProbe();
 		var bldr = LineReaderBuilder.builder().terminal(nativeTerm);
 		return bldr;
 	}
 
-	private Optional<ImageDisplayMethod> detectImageDisplayMethodImpl() {
-		if (isDumb()) {
-			return Optional.empty();
-		} else if ("kitty".equals(System.getenv("SEQUINS_IMAGE_MODE"))
-				|| "kitty".equals(System.getProperty("sequins.image.mode"))) {
-			return Optional.of(ImageDisplayMethod.KITTY);
-		} else if ("sixel".equals(System.getenv("SEQUINS_IMAGE_MODE"))
-				|| "sixel".equals(System.getProperty("sequins.image.mode"))) {
-			return Optional.of(ImageDisplayMethod.SIXEL);
-		} else {
-
-			var buf = new char[1024];
-			nativeTerm.enterRawMode();
-			var seq = createSequence().esc().rawStr("_Gi=31,s=1,v=1,a=q,t=d,f=24;AAAA").st().esc().rawStr("[c");
-			print(seq.toString());
+	/**
+	 * Wait for any capability probe in progress to finish. Until then it is
+	 * reading the terminal's input, so anything else that reads it, such as a
+	 * prompt or a cursor position query, would race it for the replies.
+	 */
+	private void awaitProbe() {
+		if (parent != null) {
+			parent.awaitProbe();
+			return;
+		}
+		CompletableFuture<Capabilities> probe;
+		synchronized (this) {
+			probe = capabilities;
+		}
+		if (probe != null)
+			probe.join();
+	}
 
+	private CompletableFuture<Capabilities> probeCapabilities() {
+		var colorTerm = System.getenv("COLORTERM");
+		var trueColor = "truecolor".equals(colorTerm) || "24bit".equals(colorTerm);
+		if (isDumb())
+			return CompletableFuture.completedFuture(Capabilities.none(trueColor));
+
+		var cache = capabilityCache();
+		var cached = cache.flatMap(c -> cachedCapabilities(c));
+		if (cached.isPresent())
+			return CompletableFuture.completedFuture(cached.get());
+
+		var future = new CompletableFuture<Capabilities>();
+		var attrs = nativeTerm.enterRawMode();
+		var seq = createSequence();
+		seq.esc().rawStr("_Gi=31,s=1,v=1,a=q,t=d,f=24;AAAA").st(); // Kitty graphics
+		seq.csi().rawStr(">0q"); // XTVERSION
+		seq.esc().rawStr("P+q5463;524742").st(); // XTGETTCAP Tc and RGB
+		seq.csi().num(16).ch('t'); // Cell size
+		seq.csi().num(14).ch('t'); // Text area size
+		seq.csi().ch('c'); // Primary device attributes, always answered, so last
+		getWriter().print(seq.toString());
+		flush();
+
+		var thread = new Thread(() -> {
+			var parser = new CapabilityParser();
+			var buf = new char[256];
+			var failed = false;
 			try {
-				nativeTerm.reader().readBuffered(buf, 500);
-				var str = new String(buf);
-				if (str.substring(1).startsWith("_G"))
-					return Optional.of(ImageDisplayMethod.KITTY);
-				else {
-					var st = new StringTokenizer(str, ";");
-					while (st.hasMoreTokens()) {
-						var t = st.nextToken();
-						if (t.equals("4")) {
-							return Optional.of(ImageDisplayMethod.SIXEL);
-						}
-					}
+				var deadline = System.currentTimeMillis() + PROBE_TIMEOUT;
+				long remaining;
+				while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+					var len = nativeTerm.reader().readBuffered(buf, remaining);
+					if (len <= 0 || parser.feed(buf, 0, len))
+						break;
 				}
 			} catch (Exception e) {
+				LOG.log(Level.DEBUG, "Failed to read capability probe replies.", e);
+				failed = true;
+			} finally {
+				nativeTerm.setAttributes(attrs);
 			}
+			/* Whatever was read before a failure can't be trusted, unlike a probe that timed out */
+			var caps = failed ? Capabilities.none(trueColor)
+					: parser.capabilities(nativeTerm.getWidth(), nativeTerm.getHeight(), trueColor);
+			/* A probe that timed out is not remembered, so it is asked again next time */
+			if (!failed && parser.done())
+				cache.ifPresent(c -> cacheCapabilities(c, caps));
+			future.complete(caps);
+		}, "SequinsCapabilities");
+		thread.setDaemon(true);
+		thread.start();
+		return future;
+	}
+
+	/**
+	 * Capabilities found out from the terminal are only remembered for the
+	 * terminal this process was started in, as that is what the cache is keyed
+	 * on.
+	 */
+	private Optional<CapabilityCache> capabilityCache() {
+		if (nativeTerm instanceof TerminalExt ext && ext.getSystemStream() != null)
+			return Optional.of(CapabilityCache.get());
+		else
+			return Optional.empty();
+	}
+
+	private static Optional<Capabilities> cachedCapabilities(CapabilityCache cache) {
+		var method = cache.get("imageDisplayMethod");
+		var cellSize = cache.get("cellSize");
+		var version = cache.get("version");
+		var trueColor = cache.get("trueColor");
+		if (method.isEmpty() || cellSize.isEmpty() || version.isEmpty() || trueColor.isEmpty())
+			return Optional.empty();
+		try {
+			var size = cellSize.get().split("x");
+			return Optional.of(new Capabilities(method.filter(m -> !m.isEmpty()).map(ImageDisplayMethod::valueOf),
+					version.filter(v -> !v.isEmpty()),
+					size.length == 2 ? Optional.of(Integer.parseInt(size[0])) : Optional.empty(),
+					size.length == 2 ? Optional.of(Integer.parseInt(size[1])) : Optional.empty(),
+					Boolean.parseBoolean(trueColor.get())));
+		} catch (IllegalArgumentException iae) {
 			return Optional.empty();
 		}
 	}
 
+	private static void cacheCapabilities(CapabilityCache cache, Capabilities caps) {
+		cache.put(Map.of(
+				"imageDisplayMethod", caps.imageDisplayMethod().map(ImageDisplayMethod::name).orElse(""),
+				"cellSize", caps.cellWidth().flatMap(w -> caps.cellHeight().map(h -> w + "x" + h)).orElse(""),
+				"version", caps.version().orElse(""),
+				"trueColor", String.valueOf(caps.trueColor())));
+	}
+
 	private char[] passwordImpl() {
 		try {
 			return createLineReaderBuilder().build().readLine('*').toCharArray();
@@ -359,7 +514,7 @@ public class JLineSequins extends AbstractTerminal implements Sequins {
 		try {
 			var writer = getWriter();
 			writer.print(createSequence().msg(fmt, args).str(": ").toString());
-			writer.flush();
+			flush();
 			return createLineReaderBuilder().build().readLine('*').toCharArray();
 		} catch (Exception e) {
 			return null;
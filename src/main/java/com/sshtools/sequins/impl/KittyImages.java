@@ -0,0 +1,109 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Bounded LRU registry of the images that have been uploaded to a Kitty
+ * terminal, so a bitmap that is drawn again can be placed by its ID rather
+ * than transmitted again. Images that are evicted must be deleted from the
+ * terminal by the caller, which also removes any placements of them still on
+ * screen.
+ * <p>
+ * Image IDs belong to the terminal window, not to this process, so IDs start
+ * from a random base. Otherwise a second program run in the same window would
+ * reuse the IDs of the first and replace its images still on screen.
+ */
+final class KittyImages {
+
+	final static int MAX_IMAGES = 64;
+
+	private final Map<Object, Integer> ids;
+	private final List<Integer> evicted = new ArrayList<>();
+	private int nextId = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+
+	KittyImages() {
+		this(MAX_IMAGES);
+	}
+
+	KittyImages(int maxImages) {
+		ids = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, Integer> eldest) {
+				if (size() > maxImages) {
+					evicted.add(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Get the ID of an image if it has already been uploaded.
+	 *
+	 * @param image image key
+	 * @return ID
+	 */
+	synchronized OptionalInt id(Object image) {
+		var id = ids.get(image);
+		return id == null ? OptionalInt.empty() : OptionalInt.of(id);
+	}
+
+	/**
+	 * Allocate an ID for an image that is about to be uploaded.
+	 *
+	 * @param image image key
+	 * @return ID
+	 */
+	synchronized int add(Object image) {
+		var id = nextId;
+		nextId = nextId == Integer.MAX_VALUE ? 1 : nextId + 1;
+		ids.put(image, id);
+		return id;
+	}
+
+	/**
+	 * Forget an image, for example if its upload failed.
+	 *
+	 * @param image image key
+	 */
+	synchronized void remove(Object image) {
+		ids.remove(image);
+	}
+
+	/**
+	 * Take the IDs of images evicted since the last call, which should now be
+	 * deleted from the terminal.
+	 *
+	 * @return evicted IDs
+	 */
+	synchronized int[] evicted() {
+		if (evicted.isEmpty())
+			return new int[0];
+		var arr = evicted.stream().mapToInt(Integer::intValue).toArray();
+		evicted.clear();
+		return arr;
+	}
+}
@@ -0,0 +1,441 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.utils.AttributedString;
+import org.jline.utils.AttributedStringBuilder;
+
+import com.sshtools.sequins.Progress;
+import com.sshtools.sequins.Sequence;
+import com.sshtools.sequins.Sequence.Color;
+import com.sshtools.sequins.Sequins;
+import com.sshtools.sequins.Throughput;
+
+/**
+ * A {@link Progress} for capable terminals that shows every active job on its
+ * own line in a live region at the bottom of the output. Frames are drawn by
+ * the terminal's {@link FrameScheduler}, and only the cells that changed since
+ * the last frame are sent. Messages, and the final state of closed jobs, scroll
+ * up out of the region as permanent output.
+ */
+public class RegionProgress implements TerminalProgress {
+
+	private final static long FRAME_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+	private final static int NO_PERCENT = Integer.MIN_VALUE;
+
+	final static class Renderer implements FrameScheduler.Node {
+		private final Sequins terminal;
+		private final FrameScheduler scheduler;
+		private final ScreenRegion screen;
+		private final boolean indeterminate;
+		private final boolean percentageText;
+		private final boolean transferStats;
+		private final int[] spinnerChars;
+		private final Object lock = new Object();
+		private final Object renderLock = new Object();
+		private final List<AttributedString> committed = new ArrayList<>();
+
+		private RegionProgress root;
+		private boolean dirty;
+		private boolean suspended;
+		private boolean closed;
+		private long nextFrame;
+		private int frame;
+
+		Renderer(Sequins terminal, FrameScheduler scheduler, boolean indeterminate, boolean percentageText, boolean transferStats, int[] spinnerChars) {
+			this.terminal = terminal;
+			this.indeterminate = indeterminate;
+			this.percentageText = percentageText;
+			this.transferStats = transferStats;
+			this.spinnerChars = spinnerChars;
+			this.scheduler = scheduler;
+			screen = new ScreenRegion(terminal.terminal());
+		}
+
+		@Override
+		public long tick(long now) {
+			synchronized (lock) {
+				if (suspended || closed || (!dirty && !indeterminate))
+					return Long.MAX_VALUE;
+				if (now - nextFrame < 0)
+					return nextFrame;
+				nextFrame = now + FRAME_INTERVAL;
+			}
+			render(false);
+			return indeterminate ? nextFrame : Long.MAX_VALUE;
+		}
+
+		void changed() {
+			boolean wake;
+			synchronized (lock) {
+				wake = !dirty;
+				dirty = true;
+			}
+			if (wake)
+				scheduler.wake();
+		}
+
+		void render(boolean release) {
+			synchronized (renderLock) {
+				var out = new StringBuilder();
+				synchronized (lock) {
+					if (suspended)
+						return;
+					dirty = false;
+					var lines = new ArrayList<AttributedString>();
+					if (!closed) {
+						root.lines(lines, 0);
+						limit(lines, terminal.terminal().getHeight() - 1);
+					}
+					screen.render(committed, lines, out);
+					committed.clear();
+					if (release)
+						screen.release(out);
+					frame++;
+				}
+				var wrt = terminal.getWriter();
+				wrt.print(out);
+				wrt.flush();
+			}
+		}
+
+		/**
+		 * Replace the lines that would not fit on the screen with a single line
+		 * saying how many were left out.
+		 */
+		private static void limit(List<AttributedString> lines, int max) {
+			if (max > 0 && lines.size() > max) {
+				var more = lines.size() - max + 1;
+				lines.subList(max - 1, lines.size()).clear();
+				lines.add(new AttributedString("… " + more + " more"));
+			}
+		}
+
+		void suspend() {
+			synchronized (renderLock) {
+				var out = new StringBuilder();
+				synchronized (lock) {
+					if (suspended)
+						return;
+					screen.render(committed, Collections.emptyList(), out);
+					committed.clear();
+					screen.erase(out);
+					suspended = true;
+				}
+				var wrt = terminal.getWriter();
+				wrt.print(out);
+				wrt.flush();
+			}
+		}
+
+		void resume() {
+			synchronized (lock) {
+				if (!suspended)
+					return;
+				suspended = false;
+				screen.invalidate();
+			}
+			changed();
+		}
+	}
+
+	private final Renderer renderer;
+	private final Optional<RegionProgress> parent;
+	private final List<Progress> jobs = new CopyOnWriteArrayList<>();
+	private final String title;
+	private final Object[] titleArgs;
+	private final boolean wasCursorVisible;
+
+	private Optional<Runnable> onClose = Optional.empty();
+	private int percent = NO_PERCENT;
+	private long done = -1;
+	private long total;
+	private Throughput throughput;
+	private String message;
+	private Object[] args;
+	private boolean cancelled;
+	private boolean closed;
+
+	RegionProgress(Sequins terminal, FrameScheduler scheduler, boolean indeterminate, boolean hideCursor, boolean percentageText,
+			boolean transferStats, String name, Object... args) {
+		this.renderer = new Renderer(terminal, scheduler, indeterminate, percentageText, transferStats, JLineProgress.CLOCK_SPINNER);
+		this.parent = Optional.empty();
+		this.title = name;
+		this.titleArgs = args;
+		this.wasCursorVisible = terminal.cursorVisible();
+		renderer.root = this;
+		terminal.cursorVisible(!hideCursor);
+		renderer.scheduler.add(renderer);
+		renderer.changed();
+	}
+
+	private RegionProgress(RegionProgress parent, String name, Object... args) {
+		this.renderer = parent.renderer;
+		this.parent = Optional.of(parent);
+		this.title = name;
+		this.titleArgs = args;
+		this.wasCursorVisible = false;
+	}
+
+	@Override
+	public final void setOnClose(Runnable onClose) {
+		this.onClose = Optional.of(onClose);
+	}
+
+	@Override
+	public final void interrupt(List<TerminalProgress> interrupted) {
+		renderer.suspend();
+		interrupted.add(this);
+	}
+
+	@Override
+	public final void resume() {
+		renderer.resume();
+	}
+
+	@Override
+	public void cancel() {
+		cancelled = true;
+		TerminalProgress.super.cancel();
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public final List<Progress> jobs() {
+		return jobs;
+	}
+
+	@Override
+	public final Progress newJob(String name, Object... args) {
+		var job = new RegionProgress(this, name, args);
+		jobs.add(job);
+		renderer.changed();
+		return job;
+	}
+
+	@Override
+	public final void progressed(Optional<Integer> percent, Optional<String> message, Object... args) {
+		synchronized (renderer.lock) {
+			this.percent = percent.orElse(NO_PERCENT);
+			if (message.isPresent()) {
+				this.message = message.get();
+				this.args = args;
+			}
+		}
+		renderer.changed();
+	}
+
+	@Override
+	public final void progressed(int percent) {
+		synchronized (renderer.lock) {
+			if (this.percent == percent)
+				return;
+			this.percent = percent;
+		}
+		renderer.changed();
+	}
+
+	@Override
+	public final void progressed(long done, long total) {
+		if (!renderer.transferStats) {
+			progressed(Progress.percent(done, total));
+			return;
+		}
+		/* Frames are already paced by the renderer, so every change of amount
+		 * is let through, not just percentage changes.
+		 */
+		synchronized (renderer.lock) {
+			if (this.done == done && this.total == total)
+				return;
+			if (throughput == null)
+				throughput = new Throughput();
+			this.done = done;
+			this.total = total;
+			this.percent = Progress.percent(done, total);
+		}
+		renderer.changed();
+	}
+
+	@Override
+	public final void message(Level level, String message, Object... args) {
+		synchronized (renderer.lock) {
+			var seq = renderer.terminal.borrowSequence();
+			prefix(seq, depth() + (visible() ? 1 : 0));
+			styled(seq, level, message, args);
+			renderer.committed.add(seq.toAttributedString());
+			renderer.terminal.releaseSequence(seq);
+		}
+		renderer.changed();
+	}
+
+	@Override
+	public final void close() throws IOException {
+		synchronized (renderer.lock) {
+			if (closed)
+				return;
+			closed = true;
+			if (visible()) {
+				renderer.committed.add(line(depth(), false));
+			}
+			if (parent.isPresent()) {
+				parent.get().jobs.remove(this);
+			} else {
+				renderer.closed = true;
+			}
+		}
+		if (parent.isPresent()) {
+			renderer.changed();
+		} else {
+			renderer.scheduler.remove(renderer);
+			renderer.render(true);
+			onClose.ifPresent(r -> r.run());
+			renderer.terminal.cursorVisible(wasCursorVisible);
+		}
+	}
+
+	void lines(List<AttributedString> lines, int depth) {
+		var next = depth;
+		if (visible()) {
+			lines.add(line(depth, true));
+			next++;
+		}
+		for (var j : jobs) {
+			((RegionProgress) j).lines(lines, next);
+		}
+	}
+
+	private boolean visible() {
+		return title != null || message != null || (textTail() && percent != NO_PERCENT);
+	}
+
+	private boolean textTail() {
+		return renderer.percentageText || renderer.transferStats;
+	}
+
+	private int depth() {
+		if (parent.isEmpty())
+			return 0;
+		var p = parent.get();
+		return p.depth() + (p.visible() ? 1 : 0);
+	}
+
+	private AttributedString line(int depth, boolean active) {
+		var seq = renderer.terminal.borrowSequence();
+		prefix(seq, depth);
+		if (message == null) {
+			if (title != null)
+				seq.msg(title, titleArgs);
+		} else {
+			styled(seq, Level.NORMAL, message, args);
+		}
+		var head = seq.toAttributedString();
+		renderer.terminal.releaseSequence(seq);
+
+		var tail = renderer.terminal.borrowSequence();
+		if (textTail() && percent != NO_PERCENT) {
+			tail.ch(' ');
+			tail.fmt("%3d%%", percent);
+			if (done >= 0) {
+				if (active)
+					throughput.sample(done);
+				tail.ch(' ');
+				transfer(tail);
+			}
+		} else if (active && renderer.indeterminate) {
+			tail.ch(' ');
+			tail.cp(renderer.spinnerChars[renderer.frame % renderer.spinnerChars.length]);
+		}
+		var tailStr = tail.toAttributedString();
+		renderer.terminal.releaseSequence(tail);
+
+		var available = renderer.terminal.getWidth() - tailStr.columnLength();
+		if (head.columnLength() > available) {
+			head = head.columnSubSequence(0, Math.max(0, available));
+		}
+		return new AttributedStringBuilder().append(head).append(tailStr).toAttributedString();
+	}
+
+	private void transfer(Sequence seq) {
+		seq.size(done);
+		if (total > 0) {
+			seq.str(" / ");
+			seq.size(total);
+		}
+		var rate = throughput.smoothedRate();
+		if (rate > 0) {
+			seq.str(", ");
+			seq.size(rate);
+			seq.str("/s");
+			var eta = throughput.eta(total);
+			if (eta.isPresent()) {
+				seq.str(", ");
+				seq.duration(eta.get());
+			}
+		}
+	}
+
+	private static void prefix(Sequence seq, int depth) {
+		seq.str(Sequence.repeat("   ", depth));
+		if (depth > 1)
+			seq.str("○ ");
+		else if (depth > 0)
+			seq.str("● ");
+	}
+
+	private static void styled(Sequence seq, Level level, String message, Object... args) {
+		switch (level) {
+		case ERROR:
+			seq.fg(Color.RED);
+			break;
+		case WARNING:
+			seq.fg(Color.BRIGHT_YELLOW);
+			break;
+		case INFO:
+			seq.fg(Color.BRIGHT_BLUE);
+			break;
+		case VERBOSE:
+			seq.boldOn();
+			break;
+		default:
+			break;
+		}
+		seq.msg(message, args);
+		switch (level) {
+		case ERROR:
+		case WARNING:
+		case INFO:
+			seq.defaultFg();
+			break;
+		case VERBOSE:
+			seq.boldOff();
+			break;
+		default:
+			break;
+		}
+	}
+}
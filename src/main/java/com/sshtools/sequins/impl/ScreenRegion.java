@@ -0,0 +1,362 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jline.terminal.Terminal;
+import org.jline.utils.AttributedString;
+import org.jline.utils.AttributedStringBuilder;
+import org.jline.utils.AttributedStyle;
+import org.jline.utils.Curses;
+import org.jline.utils.InfoCmp.Capability;
+import org.jline.utils.WCWidth;
+
+/**
+ * An in-memory model of a block of lines at the bottom of the terminal output.
+ * Each new frame is compared cell by cell with the previous one, and only cursor
+ * movements and the changed cells are emitted. Lines may also be committed, in
+ * which case they are drawn at the top of the region and then scroll out of it
+ * permanently.
+ * <p>
+ * The region starts on the line the cursor is on at the time of the first
+ * frame, and cursor position is tracked relative to this. This only holds while
+ * the whole region fits on the screen, so it is never allowed to grow taller
+ * than one line less than the terminal height.
+ */
+final class ScreenRegion {
+
+	private final static int CONTINUATION = -1;
+	private final static int MERGE_GAP = 4;
+
+	private final Terminal terminal;
+	private final String up;
+	private final String down;
+	private final String column;
+	private final String clearToEol;
+	private final String clearToEos;
+
+	private int width = -1;
+	private int height = -1;
+	private int rows;
+	private int[][] cps = new int[0][];
+	private long[][] styles = new long[0][];
+	private int cursorRow;
+	private int cursorCol;
+
+	ScreenRegion(Terminal terminal) {
+		this.terminal = terminal;
+		up = terminal.getStringCapability(Capability.parm_up_cursor);
+		down = terminal.getStringCapability(Capability.parm_down_cursor);
+		column = terminal.getStringCapability(Capability.column_address);
+		clearToEol = terminal.getStringCapability(Capability.clr_eol);
+		clearToEos = terminal.getStringCapability(Capability.clr_eos);
+	}
+
+	static boolean isSupported(Terminal terminal) {
+		return terminal.getStringCapability(Capability.cursor_address) != null
+				&& terminal.getStringCapability(Capability.parm_up_cursor) != null
+				&& terminal.getStringCapability(Capability.parm_down_cursor) != null
+				&& terminal.getStringCapability(Capability.column_address) != null
+				&& terminal.getStringCapability(Capability.clr_eol) != null
+				&& terminal.getStringCapability(Capability.clr_eos) != null;
+	}
+
+	/**
+	 * Draw a frame. Any committed lines are drawn first (wrapping if needed) and
+	 * are then no longer part of the region. The remaining lines are truncated to
+	 * the terminal width, and any that do not fit in the terminal height are
+	 * dropped.
+	 */
+	void render(List<AttributedString> committed, List<AttributedString> lines, StringBuilder out) {
+		var w = terminal.getWidth();
+		var h = terminal.getHeight();
+		if (w != width || h != height) {
+			if (rows > 0) {
+				erase(out);
+			}
+			width = w;
+			height = h;
+			cps = new int[0][];
+			styles = new long[0][];
+		}
+
+		var max = maxRows();
+		if (lines.size() > max)
+			lines = lines.subList(0, max);
+
+		var parts = new ArrayList<AttributedString>();
+		for (var line : committed) {
+			parts.addAll(line.columnSplitLength(width));
+		}
+		if (!parts.isEmpty() && parts.size() + lines.size() > max) {
+			/* Too much to diff in place, so clear the region and let the committed
+			 * lines scroll the screen naturally. The region starts again below them.
+			 */
+			erase(out);
+			for (var part : parts) {
+				out.append(part.toAnsi(terminal));
+				out.append("\r\n");
+			}
+			parts.clear();
+		}
+
+		var frameCps = new int[0][];
+		var frameStyles = new long[0][];
+		var row = 0;
+		for (var part : parts) {
+			frameCps = grow(frameCps, row);
+			frameStyles = grow(frameStyles, row);
+			frameCps[row] = new int[width];
+			frameStyles[row] = new long[width];
+			layout(part, frameCps[row], frameStyles[row]);
+			row++;
+		}
+		var commit = row;
+		for (var line : lines) {
+			frameCps = grow(frameCps, row);
+			frameStyles = grow(frameStyles, row);
+			frameCps[row] = new int[width];
+			frameStyles[row] = new long[width];
+			layout(line, frameCps[row], frameStyles[row]);
+			row++;
+		}
+
+		/* Allocate any new lines by scrolling */
+		if (row > Math.max(rows, 1)) {
+			moveTo(Math.max(rows, 1) - 1, cursorCol < 0 ? 0 : cursorCol, out);
+			for (int i = Math.max(rows, 1); i < row; i++) {
+				out.append("\r\n");
+				cursorRow++;
+			}
+			cursorCol = 0;
+		}
+
+		var total = Math.max(row, rows);
+		for (int r = 0; r < total; r++) {
+			diffRow(r, r < row ? frameCps[r] : null, r < row ? frameStyles[r] : null, out);
+		}
+		rows = Math.max(row, rows);
+
+		/* Committed lines are now permanent, drop them from the model */
+		if (commit > 0) {
+			if (rows == commit) {
+				/* Nothing left, region is now the line after the last committed line */
+				moveTo(commit - 1, cursorCol < 0 ? 0 : cursorCol, out);
+				out.append("\r\n");
+				cursorRow = commit;
+				cursorCol = 0;
+			}
+			var keep = rows - commit;
+			var newCps = new int[keep][];
+			var newStyles = new long[keep][];
+			for (int r = 0; r < keep; r++) {
+				newCps[r] = r + commit < row ? frameCps[r + commit] : blankCps();
+				newStyles[r] = r + commit < row ? frameStyles[r + commit] : new long[width];
+			}
+			cps = newCps;
+			styles = newStyles;
+			cursorRow -= commit;
+			rows = keep;
+		} else {
+			cps = Arrays.copyOf(frameCps, rows);
+			styles = Arrays.copyOf(frameStyles, rows);
+			for (int r = row; r < rows; r++) {
+				cps[r] = blankCps();
+				styles[r] = new long[width];
+			}
+		}
+	}
+
+	/**
+	 * Clear the region from the screen, leaving the cursor at its first line.
+	 */
+	void erase(StringBuilder out) {
+		moveTo(0, 0, out);
+		Curses.tputs(out, clearToEos);
+		invalidate();
+	}
+
+	/**
+	 * Leave the region as it is on screen, moving the cursor to the line following
+	 * the last non-blank line. The region will start afresh at this line.
+	 */
+	void release(StringBuilder out) {
+		var last = -1;
+		for (int r = 0; r < rows; r++) {
+			if (!isBlank(cps[r], styles[r]))
+				last = r;
+		}
+		if (last > -1) {
+			moveTo(last, cursorCol < 0 ? 0 : cursorCol, out);
+			out.append("\r\n");
+			cursorRow = last + 1;
+			cursorCol = 0;
+			Curses.tputs(out, clearToEos);
+		} else {
+			moveTo(0, 0, out);
+		}
+		invalidate();
+	}
+
+	/**
+	 * Forget everything known about the region, and assume the cursor is at the
+	 * start of its first line.
+	 */
+	void invalidate() {
+		rows = 0;
+		cps = new int[0][];
+		styles = new long[0][];
+		cursorRow = 0;
+		cursorCol = 0;
+	}
+
+	/**
+	 * Get the most lines the region may have, which is one less than the terminal
+	 * height so the region never scrolls off the top of the screen.
+	 */
+	int maxRows() {
+		return height > 1 ? height - 1 : Integer.MAX_VALUE;
+	}
+
+	private void diffRow(int r, int[] newCps, long[] newStyles, StringBuilder out) {
+		var oldCps = r < cps.length && cps[r] != null ? cps[r] : null;
+		var oldStyles = r < styles.length && styles[r] != null ? styles[r] : null;
+
+		var newEnd = newCps == null ? 0 : extent(newCps, newStyles);
+		var oldEnd = oldCps == null ? 0 : extent(oldCps, oldStyles);
+
+		var c = 0;
+		while (c < newEnd) {
+			if (oldCps != null && c < oldEnd && oldCps[c] == newCps[c] && oldStyles[c] == newStyles[c]) {
+				c++;
+				continue;
+			}
+
+			/* Found a change, extend the run over small unchanged gaps */
+			var start = c;
+			var end = c;
+			var gap = 0;
+			for (c = c + 1; c < newEnd && gap <= MERGE_GAP; c++) {
+				if (oldCps != null && c < oldEnd && oldCps[c] == newCps[c] && oldStyles[c] == newStyles[c]) {
+					gap++;
+				} else {
+					gap = 0;
+					end = c;
+				}
+			}
+
+			/* Never leave half of a wide character behind */
+			while (start > 0 && (newCps[start] == CONTINUATION || isContinuation(oldCps, oldEnd, start)))
+				start--;
+			while (end + 1 < newEnd
+					&& (newCps[end + 1] == CONTINUATION || isContinuation(oldCps, oldEnd, end + 1)))
+				end++;
+
+			moveTo(r, start, out);
+			out.append(encode(newCps, newStyles, start, end + 1));
+			cursorCol = end + 1 >= width ? -1 : end + 1;
+			c = end + 1;
+		}
+
+		if (oldEnd > newEnd) {
+			moveTo(r, newEnd, out);
+			Curses.tputs(out, clearToEol);
+		}
+	}
+
+	private String encode(int[] rowCps, long[] rowStyles, int start, int end) {
+		var bldr = new AttributedStringBuilder(end - start);
+		for (int i = start; i < end; i++) {
+			var cp = rowCps[i];
+			if (cp == CONTINUATION)
+				continue;
+			bldr.style(new AttributedStyle(rowStyles[i], rowStyles[i]));
+			bldr.append(Character.toString(cp));
+		}
+		return bldr.toAnsi(terminal);
+	}
+
+	private void moveTo(int row, int col, StringBuilder out) {
+		if (row < cursorRow) {
+			Curses.tputs(out, up, cursorRow - row);
+		} else if (row > cursorRow) {
+			Curses.tputs(out, down, row - cursorRow);
+		}
+		cursorRow = row;
+		if (col != cursorCol) {
+			if (col == 0)
+				out.append('\r');
+			else
+				Curses.tputs(out, column, Math.min(col, width - 1));
+			cursorCol = col >= width ? -1 : col;
+		}
+	}
+
+	private void layout(AttributedString line, int[] rowCps, long[] rowStyles) {
+		Arrays.fill(rowCps, ' ');
+		var col = 0;
+		var len = line.length();
+		for (int i = 0; i < len && col < rowCps.length;) {
+			var cp = Character.codePointAt(line, i);
+			var style = line.styleAt(i).getStyle();
+			i += Character.charCount(cp);
+			var w = WCWidth.wcwidth(cp);
+			if (w < 1)
+				continue;
+			if (col + w > rowCps.length)
+				break;
+			rowCps[col] = cp;
+			rowStyles[col] = style;
+			if (w > 1) {
+				rowCps[col + 1] = CONTINUATION;
+				rowStyles[col + 1] = style;
+			}
+			col += w;
+		}
+	}
+
+	private int[] blankCps() {
+		var blank = new int[width];
+		Arrays.fill(blank, ' ');
+		return blank;
+	}
+
+	private static int extent(int[] rowCps, long[] rowStyles) {
+		var end = rowCps.length;
+		while (end > 0 && rowCps[end - 1] == ' ' && rowStyles[end - 1] == 0)
+			end--;
+		return end;
+	}
+
+	private static boolean isContinuation(int[] rowCps, int rowEnd, int col) {
+		return rowCps != null && col < rowEnd && rowCps[col] == CONTINUATION;
+	}
+
+	private static boolean isBlank(int[] rowCps, long[] rowStyles) {
+		return extent(rowCps, rowStyles) == 0;
+	}
+
+	private static int[][] grow(int[][] arr, int index) {
+		return index < arr.length ? arr : Arrays.copyOf(arr, Math.max(4, arr.length * 2));
+	}
+
+	private static long[][] grow(long[][] arr, int index) {
+		return index < arr.length ? arr : Arrays.copyOf(arr, Math.max(4, arr.length * 2));
+	}
+}
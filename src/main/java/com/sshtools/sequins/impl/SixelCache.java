@@ -0,0 +1,83 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins.impl;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of encoded Sixel escape streams, bounded by their total size, so
+ * an unchanged image can be drawn again without quantising and encoding it
+ * again. Streams are held off-heap.
+ */
+final class SixelCache {
+
+	/**
+	 * Identifies an image and the parameters it was rendered with.
+	 */
+	record Key(Object image, int width, int height) {
+	}
+
+	final static long MAX_BYTES = 32 * 1024 * 1024;
+	private final static SixelCache DEFAULT = new SixelCache(MAX_BYTES);
+
+	static SixelCache get() {
+		return DEFAULT;
+	}
+
+	private final Map<Key, ByteBuffer> encoded = new LinkedHashMap<>(16, 0.75f, true);
+	private final long maxBytes;
+	private long bytes;
+
+	SixelCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Get a previously encoded stream.
+	 *
+	 * @param key key
+	 * @return encoded stream ready to be read, or {@code null} if not cached
+	 */
+	synchronized ByteBuffer get(Key key) {
+		var buf = encoded.get(key);
+		return buf == null ? null : buf.duplicate();
+	}
+
+	/**
+	 * Cache an encoded stream, evicting the least recently used streams to make
+	 * room. Streams larger than the cache itself are not kept.
+	 *
+	 * @param key  key
+	 * @param data encoded stream
+	 */
+	synchronized void put(Key key, byte[] data) {
+		var len = data.length;
+		if (len > maxBytes)
+			return;
+		var buf = ByteBuffer.allocateDirect(len).put(data).flip();
+		var was = encoded.put(key, buf);
+		if (was != null)
+			bytes -= was.capacity();
+		bytes += len;
+		var it = encoded.values().iterator();
+		while (bytes > maxBytes) {
+			bytes -= it.next().capacity();
+			it.remove();
+		}
+	}
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins.impl;
+
+import java.util.List;
+
+import com.sshtools.sequins.Progress;
+
+/**
+ * A {@link Progress} that draws directly to a terminal, and so must get out of
+ * the way while the terminal is prompting.
+ */
+public interface TerminalProgress extends Progress {
+
+	void setOnClose(Runnable onClose);
+
+	void interrupt(List<TerminalProgress> interrupted);
+
+	void resume();
+}
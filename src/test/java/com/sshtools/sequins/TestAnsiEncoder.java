@@ -0,0 +1,120 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import org.jline.terminal.TerminalBuilder;
+import org.jline.utils.AttributedStyle;
+import org.junit.Test;
+
+import com.sshtools.sequins.Sequence.Color;
+
+public class TestAnsiEncoder {
+
+	@Test
+	public void testNoTerminal() throws IOException {
+		assertSame(null);
+	}
+
+	@Test
+	public void testXterm() throws IOException {
+		assertSame("xterm");
+	}
+
+	@Test
+	public void testXterm256() throws IOException {
+		assertSame("xterm-256color");
+	}
+
+	@Test
+	public void testWindows256() throws IOException {
+		assertSame("windows-256color");
+	}
+
+	@Test
+	public void testWindowsVtp() throws IOException {
+		assertSame("windows-vtp");
+	}
+
+	@Test
+	public void testDumb() throws IOException {
+		assertSame("dumb");
+	}
+
+	private void assertSame(String type) throws IOException {
+		assertSame(type, seq -> seq.str("plain"));
+		assertSame(type, seq -> seq.fg(Color.RED).bold(true).str("red bold").bold(false).str(" red").defaultFg());
+		assertSame(type, seq -> seq.bold(true).str("bold").fg(Color.BRIGHT_GREEN).str("green").off().str("off"));
+		assertSame(type, seq -> seq.style(AttributedStyle.DEFAULT.bold().faint()).str("both")
+				.style(AttributedStyle.DEFAULT.bold()).str("bold").style(AttributedStyle.DEFAULT).str("none"));
+		assertSame(type, seq -> seq.italic(true).underline(true).blink(true).inverse(true).strikeout(true).str("all")
+				.italic(false).underline(false).blink(false).inverse(false).strikeout(false).str("none"));
+		assertSame(type, seq -> seq.bg(Color.BLUE).str("blue").bg(Color.BRIGHT_YELLOW).str("yellow").defaultBg());
+		assertSame(type, seq -> seq.style(AttributedStyle.DEFAULT.foreground(200).background(17)).str("indexed"));
+		assertSame(type, seq -> seq.style(AttributedStyle.DEFAULT.foreground(255, 128, 0).background(0, 64, 255))
+				.str("rgb").style(AttributedStyle.DEFAULT.foreground(12, 12, 12)).str("grey"));
+		assertSame(type, seq -> seq.style(AttributedStyle.DEFAULT.hidden()).str("\033]0;title\007").off().str("x"));
+		assertSame(type, seq -> seq.str("┌─┐").fg(Color.CYAN).str("│x│").off().str("└─┘"));
+		assertSame(type, seq -> seq.str("héllo ✓ 😀 lone \uD800 end").fg(Color.RED).str("€"));
+	}
+
+	private void assertSame(String type, Consumer<Sequence> builder) throws IOException {
+		Sequence seq;
+		if (type == null) {
+			seq = new Sequence() {
+				@Override
+				public Sequence newSeq() {
+					return this;
+				}
+
+				@Override
+				public Sequence eraseLine() {
+					return this;
+				}
+
+				@Override
+				public Sequence cub(int repeat) {
+					return this;
+				}
+			};
+		} else {
+			var terminal = TerminalBuilder.builder().system(false).type(type)
+					.streams(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream()).build();
+			seq = Sequins.create(terminal).createSequence();
+		}
+		builder.accept(seq);
+		var out = new ByteArrayOutputStream();
+		seq.writeTo(out);
+		assertEquals(type + ": " + seq, escaped(seq.toString().getBytes(StandardCharsets.UTF_8)),
+				escaped(out.toByteArray()));
+
+		/* And again, as the encoder's buffers are reused */
+		out.reset();
+		seq.writeTo(out);
+		assertEquals(escaped(seq.toString().getBytes(StandardCharsets.UTF_8)), escaped(out.toByteArray()));
+	}
+
+	private static String escaped(byte[] bytes) {
+		return new String(bytes, StandardCharsets.UTF_8).replace("\033", "ESC");
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+
+public class TestProgressCounter {
+
+	@Test
+	public void testReportsOnlyAtThreshold() throws IOException {
+		var progress = new RecordingProgress();
+		var counter = new ProgressCounter(progress, 1000);
+		counter.reportEvery(100);
+		for (int i = 0; i < 9; i++)
+			counter.count(10);
+		assertEquals(List.of(), progress.reports);
+		counter.count(10);
+		assertEquals(List.of(100L), progress.reports);
+		counter.count(99);
+		assertEquals(List.of(100L), progress.reports);
+		counter.count(1);
+		assertEquals(List.of(100L, 200L), progress.reports);
+	}
+
+	@Test
+	public void testThresholdCountsFromLastReport() throws IOException {
+		var progress = new RecordingProgress();
+		var counter = new ProgressCounter(progress, 1000);
+		counter.reportEvery(100);
+		counter.count(150);
+		counter.count(60);
+		counter.count(40);
+		assertEquals(List.of(150L, 250L), progress.reports);
+	}
+
+	@Test
+	public void testAlwaysReportsCompletion() throws IOException {
+		var progress = new RecordingProgress();
+		var counter = new ProgressCounter(progress, 50);
+		counter.reportEvery(100);
+		counter.count(20);
+		counter.count(30);
+		assertEquals(List.of(50L), progress.reports);
+	}
+
+	@Test
+	public void testDefaultThreshold() throws IOException {
+		var progress = new RecordingProgress();
+		var counter = new ProgressCounter(progress, -1);
+		counter.count(ProgressCounter.DEFAULT_REPORT_EVERY - 1);
+		assertEquals(List.of(), progress.reports);
+		counter.count(1);
+		assertEquals(List.of(ProgressCounter.DEFAULT_REPORT_EVERY), progress.reports);
+	}
+
+	@Test
+	public void testFlushReportsRemainder() throws IOException {
+		var progress = new RecordingProgress();
+		var counter = new ProgressCounter(progress, -1);
+		counter.reportEvery(100);
+		counter.count(130);
+		counter.count(20);
+		counter.flush();
+		counter.flush();
+		assertEquals(List.of(130L, 150L), progress.reports);
+	}
+
+	@Test
+	public void testReportsByInterval() throws Exception {
+		var progress = new RecordingProgress();
+		var counter = new ProgressCounter(progress, -1);
+		counter.reportInterval(Duration.ofMillis(200));
+		counter.count(Long.MAX_VALUE / 4);
+		assertEquals(List.of(), progress.reports);
+		Thread.sleep(250);
+		counter.count(1);
+		assertEquals(List.of(Long.MAX_VALUE / 4 + 1), progress.reports);
+		counter.count(1);
+		assertEquals(1, progress.reports.size());
+	}
+
+	@Test
+	public void testCancelledOnlyCheckedAtThreshold() throws IOException {
+		var progress = new RecordingProgress();
+		var counter = new ProgressCounter(progress, 1000);
+		counter.reportEvery(100);
+		progress.cancelled = true;
+		counter.count(50);
+		try {
+			counter.count(50);
+			fail("Expected cancellation.");
+		} catch (IOException ioe) {
+			assertTrue(progress.reports.isEmpty());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsZeroThreshold() {
+		new ProgressCounter(new RecordingProgress(), -1).reportEvery(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsZeroInterval() {
+		new ProgressCounter(new RecordingProgress(), -1).reportInterval(Duration.ZERO);
+	}
+
+	private final static class RecordingProgress implements Progress {
+		private final List<Long> reports = new ArrayList<>();
+		private boolean cancelled;
+
+		@Override
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		@Override
+		public List<Progress> jobs() {
+			return List.of();
+		}
+
+		@Override
+		public Progress newJob(String name, Object... args) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void progressed(long done, long total) {
+			reports.add(done);
+		}
+
+		@Override
+		public void progressed(Optional<Integer> percent, Optional<String> message, Object... args) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void message(Level level, String message, Object... args) {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
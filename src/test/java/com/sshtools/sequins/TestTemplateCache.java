@@ -0,0 +1,127 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class TestTemplateCache {
+
+	@Test
+	public void testMessageFormatHighlightsArguments() {
+		var seq = new CountingSequence();
+		var bold = seq.newSeq().boldOn().str("x").boldOff().toString();
+		var template = new TemplateCache(4).messageFormat(seq, "Copied {0} files");
+		assertEquals("Copied " + bold.replace("x", "12") + " files", template.format(12));
+	}
+
+	@Test
+	public void testFormatHighlightsArguments() {
+		var seq = new CountingSequence();
+		var bold = seq.newSeq().boldOn().str("x").boldOff().toString();
+		var template = new TemplateCache(4).format(seq, "%d files");
+		assertEquals(bold.replace("x", "12") + " files", template.format(12));
+	}
+
+	@Test
+	public void testPatternWithoutArguments() {
+		var cache = new TemplateCache(4);
+		assertEquals("Done", cache.messageFormat(new CountingSequence(), "Done").format());
+		assertEquals("Done", cache.format(new CountingSequence(), "Done").format());
+	}
+
+	@Test
+	public void testReusesTemplate() {
+		var cache = new TemplateCache(4);
+		var seq = new CountingSequence();
+		var template = cache.messageFormat(seq, "Copied {0}");
+		var created = seq.created;
+		assertSame(template, cache.messageFormat(seq, "Copied {0}"));
+		assertSame(template, cache.messageFormat(new CountingSequence(), "Copied {0}"));
+		assertEquals(created, seq.created);
+	}
+
+	@Test
+	public void testKeyedOnKindOfPattern() {
+		var cache = new TemplateCache(4);
+		var seq = new CountingSequence();
+		assertNotSame(cache.messageFormat(seq, "{0} %s"), cache.format(seq, "{0} %s"));
+	}
+
+	@Test
+	public void testKeyedOnTypeOfSequence() {
+		var cache = new TemplateCache(4);
+		assertNotSame(cache.messageFormat(new CountingSequence(), "Copied {0}"),
+				cache.messageFormat(new OtherSequence(), "Copied {0}"));
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		var cache = new TemplateCache(2);
+		var seq = new CountingSequence();
+		var first = cache.messageFormat(seq, "One {0}");
+		var second = cache.messageFormat(seq, "Two {0}");
+		assertSame(first, cache.messageFormat(seq, "One {0}"));
+		cache.messageFormat(seq, "Three {0}");
+		assertSame(first, cache.messageFormat(seq, "One {0}"));
+		assertNotSame(second, cache.messageFormat(seq, "Two {0}"));
+	}
+
+	@Test
+	public void testMsgAndFmtUseCache() {
+		var seq = new CountingSequence();
+		seq.msg("Copied {0}", "a");
+		var created = seq.created;
+		seq.msg("Copied {0}", "b");
+		seq.fmt("%s files", "c");
+		var afterFmt = seq.created;
+		seq.fmt("%s files", "d");
+		assertEquals(created, afterFmt - 1);
+		assertEquals(afterFmt, seq.created);
+	}
+
+	private abstract static class PlainSequence extends Sequence {
+		@Override
+		public Sequence eraseLine() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Sequence cub(int repeat) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private final static class CountingSequence extends PlainSequence {
+		private int created;
+
+		@Override
+		public Sequence newSeq() {
+			created++;
+			return new CountingSequence();
+		}
+	}
+
+	private final static class OtherSequence extends PlainSequence {
+		@Override
+		public Sequence newSeq() {
+			return new OtherSequence();
+		}
+	}
+}
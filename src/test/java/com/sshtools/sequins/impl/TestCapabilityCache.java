@@ -0,0 +1,95 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestCapabilityCache {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRemembersAcrossInstances() throws IOException {
+		var file = file();
+		new CapabilityCache(Optional.of(file), "term1", CapabilityCache.TTL).put("cellSize", "10x20");
+		assertEquals(Optional.of("10x20"), new CapabilityCache(Optional.of(file), "term1", CapabilityCache.TTL).get("cellSize"));
+	}
+
+	@Test
+	public void testEmptyValueIsRemembered() throws IOException {
+		var cache = new CapabilityCache(Optional.of(file()), "term1", CapabilityCache.TTL);
+		cache.put("imageDisplayMethod", "");
+		assertEquals(Optional.of(""), cache.get("imageDisplayMethod"));
+	}
+
+	@Test
+	public void testKeyedByTerminal() throws IOException {
+		var file = file();
+		new CapabilityCache(Optional.of(file), "term1", CapabilityCache.TTL).put("cellSize", "10x20");
+		assertEquals(Optional.empty(), new CapabilityCache(Optional.of(file), "term2", CapabilityCache.TTL).get("cellSize"));
+	}
+
+	@Test
+	public void testValuesExpire() throws IOException {
+		var cache = new CapabilityCache(Optional.of(file()), "term1", Duration.ZERO);
+		cache.put("cellSize", "10x20");
+		assertEquals(Optional.empty(), cache.get("cellSize"));
+	}
+
+	@Test
+	public void testExpiredValuesArePruned() throws IOException {
+		var file = file();
+		new CapabilityCache(Optional.of(file), "term1", CapabilityCache.TTL).put("cellSize", "10x20");
+		new CapabilityCache(Optional.of(file), "term2", Duration.ZERO).put("cellSize", "8x16");
+		var content = Files.readString(file);
+		assertFalse(content.contains("term1"));
+		assertFalse(content.contains("term2"));
+	}
+
+	@Test
+	public void testValuesWrittenTogether() throws IOException {
+		var file = file();
+		new CapabilityCache(Optional.of(file), "term1", CapabilityCache.TTL).put(Map.of("version", "kitty(0.35)", "trueColor", "true"));
+		var cache = new CapabilityCache(Optional.of(file), "term1", CapabilityCache.TTL);
+		assertEquals(Optional.of("kitty(0.35)"), cache.get("version"));
+		assertEquals(Optional.of("true"), cache.get("trueColor"));
+	}
+
+	@Test
+	public void testDisabled() {
+		var cache = new CapabilityCache(Optional.empty(), "term1", CapabilityCache.TTL);
+		cache.put("cellSize", "10x20");
+		assertTrue(cache.get("cellSize").isEmpty());
+	}
+
+	private Path file() throws IOException {
+		return folder.getRoot().toPath().resolve("sequins").resolve("capabilities.properties");
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Optional;
+
+import org.junit.Test;
+
+import com.sshtools.sequins.Bitmap.ImageDisplayMethod;
+
+public class TestCapabilityParser {
+
+	private final static String KITTY_REPLIES = "\033_Gi=31;OK\033\\\033P>|kitty(0.35)\033\\\033P1+r5463=\033\\"
+			+ "\033[6;20;10t\033[4;480;800t\033[?62;22c";
+
+	@Test
+	public void testKitty() {
+		var parser = new CapabilityParser();
+		assertTrue(feed(parser, KITTY_REPLIES));
+		var caps = parser.capabilities(80, 24, false);
+		assertEquals(Optional.of(ImageDisplayMethod.KITTY), caps.imageDisplayMethod());
+		assertEquals(Optional.of("kitty(0.35)"), caps.version());
+		assertEquals(Optional.of(10), caps.cellWidth());
+		assertEquals(Optional.of(20), caps.cellHeight());
+		assertTrue(caps.trueColor());
+	}
+
+	@Test
+	public void testSixel() {
+		var parser = new CapabilityParser();
+		assertTrue(feed(parser, "\033[?64;1;4;22c"));
+		var caps = parser.capabilities(80, 24, false);
+		assertEquals(Optional.of(ImageDisplayMethod.SIXEL), caps.imageDisplayMethod());
+		assertFalse(caps.trueColor());
+	}
+
+	@Test
+	public void testRepliesSplitAnywhere() {
+		for (var size = 1; size < 8; size++) {
+			var parser = new CapabilityParser();
+			var chars = KITTY_REPLIES.toCharArray();
+			var done = false;
+			for (var off = 0; off < chars.length; off += size) {
+				assertFalse(done);
+				done = parser.feed(chars, off, Math.min(size, chars.length - off));
+			}
+			assertTrue(done);
+			assertEquals(complete(KITTY_REPLIES).capabilities(80, 24, false), parser.capabilities(80, 24, false));
+		}
+	}
+
+	@Test
+	public void testNotDoneWithoutDeviceAttributes() {
+		var parser = new CapabilityParser();
+		assertFalse(feed(parser, "\033_Gi=31;OK\033\\\033[6;20;10t"));
+		assertFalse(parser.done());
+	}
+
+	@Test
+	public void testCellSizeFromTextArea() {
+		var caps = complete("\033[4;480;800t\033[?62c").capabilities(80, 24, false);
+		assertEquals(Optional.of(10), caps.cellWidth());
+		assertEquals(Optional.of(20), caps.cellHeight());
+	}
+
+	@Test
+	public void testNoCellSize() {
+		var caps = complete("\033[?62c").capabilities(80, 24, false);
+		assertEquals(Optional.empty(), caps.cellWidth());
+	}
+
+	@Test
+	public void testTypedInputIgnored() {
+		var caps = complete("ls -l\033OA\033[6;20;10tq\033[?62;4c").capabilities(80, 24, true);
+		assertEquals(Optional.of(ImageDisplayMethod.SIXEL), caps.imageDisplayMethod());
+		assertEquals(Optional.of(10), caps.cellWidth());
+		assertTrue(caps.trueColor());
+	}
+
+	@Test
+	public void testBelTerminatedString() {
+		var caps = complete("\033P>|XTerm(390)\007\033[?62c").capabilities(80, 24, false);
+		assertEquals(Optional.of("XTerm(390)"), caps.version());
+	}
+
+	private static CapabilityParser complete(String replies) {
+		var parser = new CapabilityParser();
+		assertTrue(feed(parser, replies));
+		return parser;
+	}
+
+	private static boolean feed(CapabilityParser parser, String replies) {
+		var chars = replies.toCharArray();
+		return parser.feed(chars, 0, chars.length);
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright © 2023 JAdaptive Limited (support@jadaptive.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sshtools.sequins.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jline.terminal.Size;
+import org.jline.terminal.Terminal;
+import org.jline.terminal.TerminalBuilder;
+import org.jline.utils.AttributedString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestScreenRegion {
+
+	private Terminal terminal;
+	private ScreenRegion region;
+
+	@Before
+	public void getTerminal() throws IOException {
+		terminal = TerminalBuilder.builder().system(false).type("xterm").size(new Size(20, 5))
+				.streams(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream()).build();
+		region = new ScreenRegion(terminal);
+	}
+
+	@After
+	public void closeTerminal() throws IOException {
+		terminal.close();
+	}
+
+	@Test
+	public void testFirstFrameDrawsEverything() {
+		var out = render(Collections.emptyList(), "abc", "def");
+		assertTrue(out.contains("abc"));
+		assertTrue(out.contains("def"));
+	}
+
+	@Test
+	public void testSameFrameDrawsNothing() {
+		render(Collections.emptyList(), "abc", "def");
+		assertEquals("", render(Collections.emptyList(), "abc", "def"));
+	}
+
+	@Test
+	public void testOnlyChangedCellsAreDrawn() {
+		render(Collections.emptyList(), "abcdefghij");
+		var out = render(Collections.emptyList(), "abcdefghiX");
+		assertTrue(out.endsWith("X"));
+		assertFalse(out.contains("abc"));
+	}
+
+	@Test
+	public void testShorterLineIsClearedToEnd() {
+		render(Collections.emptyList(), "abcdef");
+		var out = render(Collections.emptyList(), "abc");
+		assertFalse(out.contains("abc"));
+		assertTrue(out.contains("\033[K"));
+	}
+
+	@Test
+	public void testRegionNeverTallerThanScreen() {
+		var out = render(Collections.emptyList(), "1", "2", "3", "4", "5", "6", "7");
+		assertTrue(out.contains("4"));
+		assertFalse(out.contains("5"));
+		assertEquals(3, count(out, "\r\n"));
+		assertEquals(4, region.maxRows());
+	}
+
+	@Test
+	public void testTooManyCommittedLinesScrollNaturally() {
+		render(Collections.emptyList(), "live");
+		var out = render(lines("c1", "c2", "c3", "c4"), "live");
+		assertTrue(out.contains("c1\r\nc2\r\nc3\r\nc4\r\n"));
+		assertTrue(out.endsWith("live"));
+	}
+
+	@Test
+	public void testResizeRedrawsEverything() {
+		render(Collections.emptyList(), "abc");
+		terminal.setSize(new Size(30, 5));
+		assertTrue(render(Collections.emptyList(), "abc").contains("abc"));
+		terminal.setSize(new Size(30, 8));
+		assertTrue(render(Collections.emptyList(), "abc").contains("abc"));
+	}
+
+	private String render(List<AttributedString> committed, String... lines) {
+		var out = new StringBuilder();
+		region.render(committed, lines(lines), out);
+		return out.toString();
+	}
+
+	private static List<AttributedString> lines(String... lines) {
+		return Arrays.stream(lines).map(AttributedString::new).toList();
+	}
+
+	private static int count(String str, String sub) {
+		var count = 0;
+		for (int i = str.indexOf(sub); i != -1; i = str.indexOf(sub, i + sub.length()))
+			count++;
+		return count;
+	}
+}